@@ -23,45 +23,356 @@
  */
 package net.bplaced.clayn.jshed;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.bplaced.clayn.jshed.util.ExecutorMetrics;
+import net.bplaced.clayn.jshed.util.InstrumentedExecutorService;
+import net.bplaced.clayn.jshed.util.MetricsRegistry;
 
 /**
  * Central class for several configurations around the JShed library. Not all
  * classes need this to be initialized. But you should always shutdown JShed at
  * the end of your application to free possible opened resources.
+ * <p>
+ * JShed provides separate executors for different kinds of work. Blocking
+ * I/O runs on the {@link #getIOExecutor() I/O executor} whose threads are
+ * created when needed and removed when idle, up to a maximum given by the
+ * system property {@value #IO_THREADS_PROPERTY} (default 256). If all threads
+ * are busy the tasks wait in a queue with the capacity given by
+ * {@value #IO_QUEUE_PROPERTY} (default 4096), if that is full too the task is
+ * rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+ * Tasks never run on the submitting thread. Tasks that wait for other tasks
+ * or run for a long time must use the
+ * {@link #getDedicatedExecutor() dedicated executor} that starts a thread for
+ * every task that finds no idle one, up to the maximum given by
+ * {@value #DEDICATED_THREADS_PROPERTY} (default 256). CPU bound work runs
+ * on the {@link #getComputeExecutor() compute executor} with one thread per
+ * processor. Delayed and periodic tasks run on the
+ * {@link #getScheduledExecutor() scheduled executor}. All executors are
+ * created lazily and can safely be used from any thread.
+ * <p>
+ * On Java 21 and later the I/O executor can run every task in its own virtual
+ * thread instead. This is enabled by setting the system property
+ * {@value #VIRTUAL_THREADS_PROPERTY} to {@code true} or by calling
+ * {@link #useVirtualThreads()}. On older versions the platform threads are
+ * used.
+ * <p>
+ * The I/O executor is always an {@link InstrumentedExecutorService}. Its
+ * metrics are available through {@link #getIOMetrics()} and are registered
+ * with the default {@link MetricsRegistry} as {@value #IO_METRICS}.
  *
  * @author Clayn <clayn_osmato@gmx.de>
  */
 public final class JShed
 {
 
-    private static ExecutorService executorService = null;
+    /**
+     * The system property for the maximum number of threads of the I/O
+     * executor.
+     */
+    public static final String IO_THREADS_PROPERTY = "jshed.io.threads";
 
+    /**
+     * The system property for the capacity of the queue of the I/O executor.
+     */
+    public static final String IO_QUEUE_PROPERTY = "jshed.io.queue";
+
+    /**
+     * The system property for the maximum number of threads of the dedicated
+     * executor.
+     */
+    public static final String DEDICATED_THREADS_PROPERTY = "jshed.dedicated.threads";
+
+    /**
+     * The system property to use virtual threads for the I/O executor.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "jshed.io.virtual";
+
+    /**
+     * The name of the metrics of the I/O executor in the
+     * {@link MetricsRegistry}.
+     */
+    public static final String IO_METRICS = "io";
+
+    private static final Object LOCK = new Object();
+
+    private static volatile InstrumentedExecutorService ioExecutor = null;
+    private static volatile ExecutorService dedicatedExecutor = null;
+    private static volatile ForkJoinPool computeExecutor = null;
+    private static volatile ScheduledExecutorService scheduledExecutor = null;
+
+    /**
+     * Returns the executor for blocking I/O.
+     *
+     * @return the I/O executor
+     * @see #getIOExecutor()
+     */
     public static ExecutorService getExecutorService()
     {
-        if (executorService == null)
+        return getIOExecutor();
+    }
+
+    /**
+     * Replaces the executor for blocking I/O. The previous executor gets shut
+     * down. The given executor is wrapped in an
+     * {@link InstrumentedExecutorService} unless it already is one.
+     *
+     * @param service the new I/O executor
+     */
+    public static void setExecutorService(ExecutorService service)
+    {
+        ExecutorService previous;
+        synchronized (LOCK)
+        {
+            previous = ioExecutor;
+            ioExecutor = service == null ? null : instrument(service);
+        }
+        if (previous != null)
         {
-            executorService = Executors.newCachedThreadPool();
-            return getExecutorService();
+            previous.shutdown();
         }
-        return executorService;
     }
 
-    public static void setExecutorService(ExecutorService service)
+    /**
+     * Returns the executor for tasks that block on I/O. Its threads are
+     * created on demand up to the maximum given by
+     * {@value #IO_THREADS_PROPERTY}. If all of them are busy the tasks are
+     * queued, so tasks must not wait for other tasks of this executor. Tasks
+     * submitted while the queue is full are rejected. If virtual threads are
+     * enabled every task runs in its own virtual thread.
+     *
+     * @return the I/O executor
+     */
+    public static ExecutorService getIOExecutor()
+    {
+        InstrumentedExecutorService executor = ioExecutor;
+        if (executor == null)
+        {
+            synchronized (LOCK)
+            {
+                executor = ioExecutor;
+                if (executor == null)
+                {
+                    executor = instrument(createIOExecutor());
+                    ioExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the executor for tasks that wait for each other or run for a
+     * long time, like the reader and writer of a pipeline. Every task runs in
+     * its own thread right away, idle threads are reused and removed after a
+     * minute. The tasks are never queued and never run by the submitting
+     * thread. If already {@value #DEDICATED_THREADS_PROPERTY} tasks are
+     * running, new tasks are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @return the dedicated executor
+     */
+    public static ExecutorService getDedicatedExecutor()
+    {
+        ExecutorService executor = dedicatedExecutor;
+        if (executor == null)
+        {
+            synchronized (LOCK)
+            {
+                executor = dedicatedExecutor;
+                if (executor == null)
+                {
+                    int threads = Math.max(1, Integer.getInteger(
+                            DEDICATED_THREADS_PROPERTY, 256));
+                    executor = new ThreadPoolExecutor(0, threads, 60,
+                            TimeUnit.SECONDS, new SynchronousQueue<>(),
+                            new NamedThreadFactory("jshed-dedicated", false));
+                    dedicatedExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the metrics of the current I/O executor.
+     *
+     * @return the metrics of the I/O executor
+     */
+    public static ExecutorMetrics getIOMetrics()
+    {
+        return ((InstrumentedExecutorService) getIOExecutor()).getMetrics();
+    }
+
+    /**
+     * Checks whether virtual threads are available for the I/O executor.
+     *
+     * @return {@code true} if running on Java 21 or later
+     */
+    public static boolean isVirtualThreadsSupported()
+    {
+        return VirtualThreads.isAvailable();
+    }
+
+    /**
+     * Replaces the I/O executor with one that runs every task in a new
+     * virtual thread. If virtual threads aren't supported, nothing changes.
+     *
+     * @return {@code true} if the I/O executor now uses virtual threads
+     */
+    public static boolean useVirtualThreads()
+    {
+        if (!VirtualThreads.isAvailable())
+        {
+            return false;
+        }
+        setExecutorService(newVirtualExecutor("jshed-io"));
+        return true;
+    }
+
+    /**
+     * Returns the executor for CPU bound tasks. The parallelism is the number
+     * of available processors.
+     *
+     * @return the compute executor
+     */
+    public static ForkJoinPool getComputeExecutor()
     {
-        if (executorService != null)
+        ForkJoinPool executor = computeExecutor;
+        if (executor == null)
         {
-            executorService.shutdown();
+            synchronized (LOCK)
+            {
+                executor = computeExecutor;
+                if (executor == null)
+                {
+                    executor = new ForkJoinPool(
+                            Runtime.getRuntime().availableProcessors());
+                    computeExecutor = executor;
+                }
+            }
         }
-        executorService = service;
+        return executor;
     }
 
+    /**
+     * Returns the executor for delayed and periodic tasks. It uses a single
+     * daemon thread, so the tasks should be short or hand their work to one
+     * of the other executors.
+     *
+     * @return the scheduled executor
+     */
+    public static ScheduledExecutorService getScheduledExecutor()
+    {
+        ScheduledExecutorService executor = scheduledExecutor;
+        if (executor == null)
+        {
+            synchronized (LOCK)
+            {
+                executor = scheduledExecutor;
+                if (executor == null)
+                {
+                    ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(
+                            1, new NamedThreadFactory("jshed-scheduler", true));
+                    pool.setRemoveOnCancelPolicy(true);
+                    executor = pool;
+                    scheduledExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Stops all executors. Executors that are requested afterwards are
+     * created again.
+     */
     public static void shutdown()
     {
-        if (executorService != null)
+        ExecutorService io;
+        ExecutorService dedicated;
+        ExecutorService compute;
+        ExecutorService scheduled;
+        synchronized (LOCK)
+        {
+            io = ioExecutor;
+            dedicated = dedicatedExecutor;
+            compute = computeExecutor;
+            scheduled = scheduledExecutor;
+            ioExecutor = null;
+            dedicatedExecutor = null;
+            computeExecutor = null;
+            scheduledExecutor = null;
+        }
+        for (ExecutorService executor : new ExecutorService[]
+        {
+            io, dedicated, compute, scheduled
+        })
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static InstrumentedExecutorService instrument(ExecutorService service)
+    {
+        InstrumentedExecutorService instrumented = service instanceof InstrumentedExecutorService
+                ? (InstrumentedExecutorService) service
+                : new InstrumentedExecutorService(service);
+        MetricsRegistry.getDefault().register(IO_METRICS,
+                instrumented.getMetrics());
+        return instrumented;
+    }
+
+    private static ExecutorService createIOExecutor()
+    {
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+                && VirtualThreads.isAvailable())
         {
-            executorService.shutdownNow();
+            return newVirtualExecutor("jshed-io");
+        }
+        int threads = Math.max(1, Integer.getInteger(IO_THREADS_PROPERTY, 256));
+        int capacity = Math.max(1, Integer.getInteger(IO_QUEUE_PROPERTY, 4096));
+        // All threads are core threads, otherwise tasks would be queued
+        // instead of starting new threads
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(capacity),
+                new NamedThreadFactory("jshed-io", false));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every task.
+     * The factory only exists in the version of {@link VirtualThreads} for
+     * Java 21 and later, so it is looked up reflectively.
+     */
+    private static ExecutorService newVirtualExecutor(String name)
+    {
+        try
+        {
+            Method factory = VirtualThreads.class.getDeclaredMethod(
+                    "newExecutor", String.class);
+            return (ExecutorService) factory.invoke(null, name);
+        } catch (InvocationTargetException ex)
+        {
+            throw new IllegalStateException(ex.getCause());
+        } catch (ReflectiveOperationException ex)
+        {
+            throw new IllegalStateException(
+                    "Virtual threads are not available", ex);
         }
     }
 
@@ -70,4 +381,25 @@ public final class JShed
 
     }
 
+    private static final class NamedThreadFactory implements ThreadFactory
+    {
+
+        private final String name;
+        private final boolean daemon;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        private NamedThreadFactory(String name, boolean daemon)
+        {
+            this.name = name;
+            this.daemon = daemon;
+        }
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,44 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed;
+
+/**
+ * Access to virtual threads. This version is used on Java versions without
+ * virtual threads, the jar contains another version for Java 21 and later
+ * that additionally provides {@code newExecutor(String)}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+final class VirtualThreads
+{
+
+    private VirtualThreads()
+    {
+    }
+
+    static boolean isAvailable()
+    {
+        return false;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.impl.conf;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.bplaced.clayn.jshed.conf.Configuration;
+import net.bplaced.clayn.jshed.conf.ConfigurationChangeListener;
+
+/**
+ * Configuration for concurrent use that never blocks readers. The values are
+ * kept as immutable entries in a {@link ConcurrentHashMap} together with the
+ * value they were set with, so reading a setting is a single lookup without
+ * locking or parsing. Values decoded by keys of other classes are cached in
+ * a separate map of the entry, reading never changes the entries
+ * themselves. {@link #set(Configuration.Key, Object)} replaces the entry with
+ * a compare and swap, so every listener receives the value that was actually
+ * replaced even if several threads set the same key. Listeners are kept in a
+ * copy on write list and may be added or removed while they are invoked.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ConcurrentConfiguration implements Configuration
+{
+
+    private final ConcurrentHashMap<String, Entry> values = new ConcurrentHashMap<>();
+    private final List<ConfigurationChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public ConcurrentConfiguration()
+    {
+    }
+
+    /**
+     * Creates a new configuration with the values of the given one.
+     *
+     * @param configuration the configuration to copy
+     */
+    public ConcurrentConfiguration(Configuration configuration)
+    {
+        for (String name : configuration.getConfigurationNames())
+        {
+            String value = configuration.getString(name);
+            if (value != null)
+            {
+                values.put(name, new Entry(value, StringKey.class, value));
+            }
+        }
+    }
+
+    private <T> void invokeListeners(Key<T> key, T old, T newV)
+    {
+        for (ConfigurationChangeListener listener : listeners)
+        {
+            listener.changed(this, key, old, newV);
+        }
+    }
+
+    /**
+     * Sets the value for the given key. Setting {@code null} removes the
+     * value. The listeners are invoked on the calling thread after the value
+     * was replaced. If several threads set the same key concurrently, the
+     * notifications may arrive in a different order than the replacements.
+     *
+     * @param <T> the type of the value
+     * @param key the key for the value
+     * @param val the new value
+     * @return the replaced value or {@code null} if no value was set
+     */
+    @Override
+    public <T> T set(Key<T> key, T val)
+    {
+        Objects.requireNonNull(key);
+        String name = key.getKey();
+        String raw = key.toString(val);
+        Entry replacement = raw == null ? null : new Entry(raw, key.getClass(),
+                val);
+        while (true)
+        {
+            Entry old = values.get(name);
+            boolean swapped;
+            if (old == null)
+            {
+                swapped = replacement == null
+                        || values.putIfAbsent(name, replacement) == null;
+            } else if (replacement == null)
+            {
+                swapped = values.remove(name, old);
+            } else
+            {
+                swapped = values.replace(name, old, replacement);
+            }
+            if (swapped)
+            {
+                T oldValue = old == null ? null : old.decode(key);
+                invokeListeners(key, oldValue, val);
+                return oldValue;
+            }
+        }
+    }
+
+    @Override
+    public <T> T get(Key<T> key, T def)
+    {
+        Objects.requireNonNull(key);
+        String name = key.getKey();
+        Entry entry = values.get(name);
+        if (entry == null)
+        {
+            return def;
+        }
+        T value = entry.decode(key);
+        return value == null ? def : value;
+    }
+
+    @Override
+    public int getInt(String key, int def)
+    {
+        Entry entry = values.get(key);
+        if (entry == null)
+        {
+            return def;
+        }
+        Object value = entry.type == IntegerKey.class ? entry.value
+                : entry.decoded.get(IntegerKey.class);
+        if (value instanceof Integer)
+        {
+            return (Integer) value;
+        }
+        return get(new IntegerKey(key), def);
+    }
+
+    @Override
+    public Set<String> getConfigurationNames()
+    {
+        return Collections.unmodifiableSet(new HashSet<>(values.keySet()));
+    }
+
+    @Override
+    public void removeChangeListener(ConfigurationChangeListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void addChangeListener(ConfigurationChangeListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    /**
+     * A value as string together with its value decoded by a key of the
+     * given class. Values decoded by keys of other classes are cached per key
+     * class and are discarded together with the entry when it is replaced.
+     */
+    private static final class Entry
+    {
+
+        /**
+         * Cached instead of {@code null} since the map can't contain
+         * {@code null}.
+         */
+        private static final Object MISSING = new Object();
+
+        private final String raw;
+        private final Class<?> type;
+        private final Object value;
+        private final ConcurrentHashMap<Class<?>, Object> decoded = new ConcurrentHashMap<>(
+                4);
+
+        private Entry(String raw, Class<?> type, Object value)
+        {
+            this.raw = raw;
+            this.type = type;
+            this.value = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T decode(Key<T> key)
+        {
+            if (type == key.getClass())
+            {
+                return (T) value;
+            }
+            Object cached = decoded.get(key.getClass());
+            if (cached == null)
+            {
+                T fresh = key.fromString(raw);
+                decoded.putIfAbsent(key.getClass(), fresh == null ? MISSING
+                        : fresh);
+                return fresh;
+            }
+            return cached == MISSING ? null : (T) cached;
+        }
+    }
+}
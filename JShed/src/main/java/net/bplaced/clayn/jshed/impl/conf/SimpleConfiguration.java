@@ -24,22 +24,45 @@
 package net.bplaced.clayn.jshed.impl.conf;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import net.bplaced.clayn.jshed.conf.Configuration;
 import net.bplaced.clayn.jshed.conf.ConfigurationChangeListener;
 
 /**
+ * Configuration backed by {@link Properties}. Decoded values are cached per
+ * name and key instance, so reading the same setting with the same key again
+ * is a single lookup instead of parsing the string again. Keys that should
+ * profit from the cache must therefore be reused. A name caches the values of
+ * at most {@value #MAX_KEYS} keys, so keys created for every call don't let
+ * the cache grow. {@link #getInt(String, int)} has its own cached value per
+ * name and {@link #getString(String, String)} reads the property directly.
+ * Setting a value only invalidates the cached values of its name.
  *
  * @author Clayn <clayn_osmato@gmx.de>
  */
 public class SimpleConfiguration implements Configuration
 {
 
+    /**
+     * Cached instead of {@code null} for settings that don't exist, since the
+     * maps can't contain {@code null}.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * The maximum number of keys whose values are cached per name.
+     */
+    static final int MAX_KEYS = 16;
+
     private final Properties properties;
     private final List<ConfigurationChangeListener> listeners = new ArrayList<>();
+    private final ConcurrentHashMap<String, Decoded> decoded = new ConcurrentHashMap<>();
 
     public SimpleConfiguration()
     {
@@ -65,6 +88,7 @@ public class SimpleConfiguration implements Configuration
         Objects.requireNonNull(key);
         T old = get(key);
         properties.setProperty(key.getKey(), key.toString(val));
+        decoded.remove(key.getKey());
         invokeListeners(key, old, val);
         return old;
     }
@@ -73,16 +97,55 @@ public class SimpleConfiguration implements Configuration
     public <T> T get(Key<T> key, T def)
     {
         Objects.requireNonNull(key);
-        T val = key.fromString(properties.getProperty(key.getKey()));
+        T val = decode(key);
         return val == null ? def : val;
     }
 
+    @Override
+    public String getString(String key, String def)
+    {
+        String value = properties.getProperty(key);
+        return value == null ? def : value;
+    }
+
     @Override
     public int getInt(String key, int def)
     {
-        IntegerKey intKey = new IntegerKey(key);
-        String val = properties.getProperty(key);
-        return intKey.fromStringPrimitive(val);
+        Decoded values = decoded.get(key);
+        Object cached = values == null ? null : values.integer;
+        if (cached == null)
+        {
+            Integer value = new IntegerKey(key).fromString(
+                    properties.getProperty(key));
+            cached = value == null ? MISSING : value;
+            decoded.computeIfAbsent(key, n -> new Decoded()).integer = cached;
+        }
+        return cached == MISSING ? def : (Integer) cached;
+    }
+
+    /**
+     * Returns the decoded value for the key from the cache or decodes and
+     * caches it. The values of a name are removed as a whole after the
+     * setting was changed. A value decoded while another thread sets a new
+     * one is therefore stored in the removed values and never used.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T decode(Key<T> key)
+    {
+        String name = key.getKey();
+        Decoded values = decoded.get(name);
+        Object cached = values == null ? null : values.get(key);
+        if (cached != null)
+        {
+            return cached == MISSING ? null : (T) cached;
+        }
+        if (values == null)
+        {
+            values = decoded.computeIfAbsent(name, n -> new Decoded());
+        }
+        T value = key.fromString(properties.getProperty(name));
+        values.put(key, value == null ? MISSING : value);
+        return value;
     }
 
     @Override
@@ -102,4 +165,30 @@ public class SimpleConfiguration implements Configuration
     {
         listeners.add(listener);
     }
+
+    /**
+     * The cached values of one name. The values decoded by keys are stored by
+     * the identity of the key, since two keys of the same class may decode a
+     * string differently.
+     */
+    private static final class Decoded
+    {
+
+        private final Map<Key<?>, Object> values = new IdentityHashMap<>(4);
+        private volatile Object integer = null;
+
+        synchronized Object get(Key<?> key)
+        {
+            return values.get(key);
+        }
+
+        synchronized void put(Key<?> key, Object value)
+        {
+            if (values.size() >= MAX_KEYS && !values.containsKey(key))
+            {
+                values.clear();
+            }
+            values.put(key, value);
+        }
+    }
 }
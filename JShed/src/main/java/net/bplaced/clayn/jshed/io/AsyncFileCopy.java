@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * Copies a file using {@link AsynchronousFileChannel}s. No thread is blocked
+ * while waiting for a read or write. Instead the next operation is started
+ * from the completion handler of the previous one.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyAsync(java.nio.file.Path, java.nio.file.Path)
+ */
+final class AsyncFileCopy
+{
+
+    private final AsynchronousFileChannel in;
+    private final AsynchronousFileChannel out;
+    private final ByteBuffer buffer;
+    private final CopyFuture future;
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private volatile long position = 0;
+
+    private final CompletionHandler<Integer, Void> onRead = new CompletionHandler<Integer, Void>()
+    {
+        @Override
+        public void completed(Integer read, Void attachment)
+        {
+            if (read < 0 || future.isCancelled())
+            {
+                finish(null);
+                return;
+            }
+            buffer.flip();
+            write();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment)
+        {
+            finish(exc);
+        }
+    };
+    private final CompletionHandler<Integer, Void> onWritten = new CompletionHandler<Integer, Void>()
+    {
+        @Override
+        public void completed(Integer written, Void attachment)
+        {
+            position += written;
+            future.advance(written);
+            if (buffer.hasRemaining())
+            {
+                write();
+                return;
+            }
+            if (position >= future.getTotal())
+            {
+                finish(null);
+                return;
+            }
+            read();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment)
+        {
+            finish(exc);
+        }
+    };
+
+    private AsyncFileCopy(AsynchronousFileChannel in,
+            AsynchronousFileChannel out, long size)
+    {
+        this.in = in;
+        this.out = out;
+        this.buffer = BufferPool.getDefault().acquireDirect(
+                BufferPool.sizeFor(size));
+        this.future = new CopyFuture(size);
+    }
+
+    static CopyFuture start(Path src, Path dest) throws IOException
+    {
+        ExecutorService executor = JShed.getIOExecutor();
+        AsynchronousFileChannel in = AsynchronousFileChannel.open(src,
+                EnumSet.of(StandardOpenOption.READ), executor);
+        AsynchronousFileChannel out;
+        try
+        {
+            out = AsynchronousFileChannel.open(dest, EnumSet.of(
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE), executor);
+        } catch (IOException ex)
+        {
+            in.close();
+            throw ex;
+        }
+        AsyncFileCopy copy;
+        try
+        {
+            copy = new AsyncFileCopy(in, out, in.size());
+        } catch (IOException ex)
+        {
+            IOTools.close(out, IOTools.close(in, null));
+            throw ex;
+        }
+        if (copy.future.getTotal() == 0)
+        {
+            copy.finish(null);
+        } else
+        {
+            copy.read();
+        }
+        return copy.future;
+    }
+
+    private void read()
+    {
+        if (future.isCancelled())
+        {
+            finish(null);
+            return;
+        }
+        buffer.clear();
+        try
+        {
+            in.read(buffer, position, null, onRead);
+        } catch (RuntimeException ex)
+        {
+            // The handler is never called if the read can't be started
+            finish(ex);
+        }
+    }
+
+    private void write()
+    {
+        try
+        {
+            out.write(buffer, position, null, onWritten);
+        } catch (RuntimeException ex)
+        {
+            finish(ex);
+        }
+    }
+
+    private void finish(Throwable failure)
+    {
+        if (!finished.compareAndSet(false, true))
+        {
+            return;
+        }
+        BufferPool.getDefault().releaseDirect(buffer);
+        failure = IOTools.close(in, failure);
+        failure = IOTools.close(out, failure);
+        if (failure != null)
+        {
+            future.fail(failure);
+        } else
+        {
+            future.complete();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Signature of data split into blocks of a fixed size. For every block a weak
+ * rsync style checksum and a strong MD5 hash are kept. The signature is used
+ * by {@link IOTools#copyDelta(DataSource, RandomAccessSink, BlockSignature)}
+ * to find the blocks of the destination that changed. It can be stored and
+ * loaded again so the destination doesn't have to be read for every copy.
+ * <p>
+ * The strong hash of a block may be missing if the block was written by a
+ * delta copy. It is computed from the destination the next time the weak
+ * checksum of the block matches. The strong hash is only used to detect
+ * changes, it doesn't protect against intentionally crafted collisions.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class BlockSignature
+{
+
+    /**
+     * The default size of the blocks.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    static final int STRONG_SIZE = 16;
+    private static final int MAGIC = 0x4a534254;
+
+    private final int blockSize;
+    private long length = 0;
+    private int count = 0;
+    private int[] weak;
+    private byte[] strong;
+    private final BitSet unhashed = new BitSet();
+
+    /**
+     * Creates an empty signature that describes no data.
+     *
+     * @param blockSize the size of the blocks
+     */
+    public BlockSignature(int blockSize)
+    {
+        if (blockSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.weak = new int[16];
+        this.strong = new byte[16 * STRONG_SIZE];
+    }
+
+    /**
+     * Computes the signature for the data of the given channel.
+     *
+     * @param channel the channel to read from its start
+     * @param blockSize the size of the blocks
+     * @return the signature of the data
+     * @throws IOException if an I/O error occurs while reading
+     */
+    public static BlockSignature compute(FileChannel channel, int blockSize) throws IOException
+    {
+        BlockSignature signature = new BlockSignature(blockSize);
+        MessageDigest md5 = newDigest();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] block = pool.acquire(blockSize);
+        try
+        {
+            long position = 0;
+            int index = 0;
+            int read;
+            while ((read = readBlock(channel, block, blockSize, position)) > 0)
+            {
+                md5.update(block, 0, read);
+                signature.set(index++, weakChecksum(block, read),
+                        md5.digest());
+                position += read;
+            }
+            signature.truncate(index, position);
+        } finally
+        {
+            pool.release(block);
+        }
+        return signature;
+    }
+
+    /**
+     * Loads a signature that was written by {@link #store(OutputStream)}.
+     *
+     * @param in the stream to read from
+     * @return the loaded signature
+     * @throws IOException if the data can't be read or isn't a signature
+     */
+    public static BlockSignature load(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC)
+        {
+            throw new IOException("Not a block signature");
+        }
+        BlockSignature signature = new BlockSignature(data.readInt());
+        long length = data.readLong();
+        int count = data.readInt();
+        if (count < 0 || length < 0
+                || count != (length + signature.blockSize - 1) / signature.blockSize)
+        {
+            throw new IOException("Corrupt block signature");
+        }
+        byte[] hash = new byte[STRONG_SIZE];
+        for (int i = 0; i < count; i++)
+        {
+            int checksum = data.readInt();
+            if (data.readBoolean())
+            {
+                data.readFully(hash);
+                signature.set(i, checksum, hash);
+            } else
+            {
+                signature.set(i, checksum, null);
+            }
+        }
+        signature.truncate(count, length);
+        return signature;
+    }
+
+    /**
+     * Writes this signature to the given stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs while writing
+     */
+    public void store(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(blockSize);
+        data.writeLong(length);
+        data.writeInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            data.writeInt(weak[i]);
+            data.writeBoolean(!unhashed.get(i));
+            if (!unhashed.get(i))
+            {
+                data.write(strong, i * STRONG_SIZE, STRONG_SIZE);
+            }
+        }
+        data.flush();
+    }
+
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Returns the length of the data described by this signature.
+     *
+     * @return the length in bytes
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    public int getBlockCount()
+    {
+        return count;
+    }
+
+    /**
+     * Computes the weak checksum of a block as used by rsync.
+     */
+    static int weakChecksum(byte[] data, int length)
+    {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++)
+        {
+            int value = data[i] & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Checks whether the block at the given index has the given weak
+     * checksum.
+     */
+    boolean matchesWeak(int index, int checksum)
+    {
+        return index < count && weak[index] == checksum;
+    }
+
+    /**
+     * Checks whether the strong hash of the block at the given index is known.
+     */
+    boolean hasStrong(int index)
+    {
+        return index < count && !unhashed.get(index);
+    }
+
+    /**
+     * Checks whether the block at the given index has the given strong hash.
+     */
+    boolean matchesStrong(int index, byte[] hash)
+    {
+        if (!hasStrong(index))
+        {
+            return false;
+        }
+        int offset = index * STRONG_SIZE;
+        for (int i = 0; i < STRONG_SIZE; i++)
+        {
+            if (strong[offset + i] != hash[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the length of the block at the given index.
+     */
+    int blockLength(int index)
+    {
+        if (index >= count)
+        {
+            return 0;
+        }
+        return (int) Math.min(blockSize, length - (long) index * blockSize);
+    }
+
+    /**
+     * Sets the checksums of the block at the given index. If the hash is
+     * {@code null} the strong hash of the block is unknown.
+     */
+    void set(int index, int checksum, byte[] hash)
+    {
+        if (index >= weak.length)
+        {
+            int size = Math.max(index + 1, weak.length * 2);
+            weak = Arrays.copyOf(weak, size);
+            strong = Arrays.copyOf(strong, size * STRONG_SIZE);
+        }
+        weak[index] = checksum;
+        if (hash == null)
+        {
+            unhashed.set(index);
+        } else
+        {
+            System.arraycopy(hash, 0, strong, index * STRONG_SIZE, STRONG_SIZE);
+            unhashed.clear(index);
+        }
+        count = Math.max(count, index + 1);
+    }
+
+    /**
+     * Sets the number of blocks and the length of the described data.
+     */
+    void truncate(int blocks, long length)
+    {
+        this.count = blocks;
+        this.length = length;
+        unhashed.clear(blocks, Math.max(blocks, unhashed.length()));
+    }
+
+    static int readBlock(FileChannel channel, byte[] block, int size,
+            long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, size);
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+            {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+}
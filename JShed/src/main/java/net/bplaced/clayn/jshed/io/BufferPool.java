@@ -0,0 +1,385 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool for the buffers used by the copy operations of {@link IOTools}. Buffers
+ * are managed in size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}
+ * where every class is double the size of the previous one. A buffer is looked
+ * up first in a per thread cache and then in a shared bounded pool. The per
+ * thread cache holds at most one buffer per size class up to
+ * {@link #LOCAL_MAX_SIZE}, so every thread keeps less than 128 KB of heap and
+ * direct memory each. Bigger buffers are only pooled in the shared pool.
+ * Virtual threads skip the per thread cache, they are usually created per
+ * task, so their cached buffers would never be reused. Heap buffers ({@code byte[]}) and direct {@link ByteBuffer}s are pooled
+ * separately.
+ * <p>
+ * Buffers that are requested bigger than {@link #MAX_SIZE} are allocated but
+ * never pooled. A buffer that was acquired must not be used anymore after it
+ * was released.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class BufferPool
+{
+
+    /**
+     * The size of the smallest size class.
+     */
+    public static final int MIN_SIZE = 4 * 1024;
+    /**
+     * The size of the biggest size class.
+     */
+    public static final int MAX_SIZE = 1024 * 1024;
+    /**
+     * The buffer size used if nothing is known about the amount of data.
+     */
+    public static final int DEFAULT_SIZE = 8 * 1024;
+    /**
+     * The size of the biggest size class that is cached per thread.
+     */
+    public static final int LOCAL_MAX_SIZE = 64 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+    private static final int LOCAL_CLASSES = Integer.numberOfTrailingZeros(LOCAL_MAX_SIZE) - MIN_SHIFT + 1;
+    /**
+     * {@code Thread.isVirtual()} on Java 21 and later, otherwise {@code null}.
+     */
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+    private static final BufferPool DEFAULT = new BufferPool(
+            Runtime.getRuntime().availableProcessors() * 2);
+
+    private final int sharedCapacity;
+    private final ThreadLocal<byte[][]> localHeap = ThreadLocal.withInitial(
+            () -> new byte[LOCAL_CLASSES][]);
+    private final ThreadLocal<ByteBuffer[]> localDirect = ThreadLocal.withInitial(
+            () -> new ByteBuffer[LOCAL_CLASSES]);
+    private final Tier<byte[]>[] sharedHeap;
+    private final Tier<ByteBuffer>[] sharedDirect;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new pool.
+     *
+     * @param sharedCapacity the maximum number of buffers per size class that
+     * are kept in the shared tier of the pool
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int sharedCapacity)
+    {
+        if (sharedCapacity < 0)
+        {
+            throw new IllegalArgumentException(
+                    "The capacity must not be negative: " + sharedCapacity);
+        }
+        this.sharedCapacity = sharedCapacity;
+        sharedHeap = new Tier[CLASSES];
+        sharedDirect = new Tier[CLASSES];
+        for (int i = 0; i < CLASSES; i++)
+        {
+            sharedHeap[i] = new Tier<>();
+            sharedDirect[i] = new Tier<>();
+        }
+    }
+
+    /**
+     * Returns the pool that is used by {@link IOTools}.
+     *
+     * @return the default pool
+     */
+    public static BufferPool getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a good buffer size for the given amount of data. The size is the
+     * size of the smallest size class that can hold all the data, but at most
+     * {@link #MAX_SIZE}. If the amount is unknown ({@code <= 0})
+     * {@link #DEFAULT_SIZE} is returned.
+     *
+     * @param expected the expected amount of data in bytes
+     * @return the buffer size to use
+     */
+    public static int sizeFor(long expected)
+    {
+        if (expected <= 0)
+        {
+            return DEFAULT_SIZE;
+        }
+        if (expected >= MAX_SIZE)
+        {
+            return MAX_SIZE;
+        }
+        return classSize(classOf((int) expected));
+    }
+
+    /**
+     * Acquires a heap buffer with at least the given size. The returned buffer
+     * may be bigger than requested.
+     *
+     * @param size the minimum size of the buffer
+     * @return a buffer with a length of at least {@code size}
+     */
+    public byte[] acquire(int size)
+    {
+        int index = classOf(size);
+        if (index >= CLASSES)
+        {
+            misses.increment();
+            return new byte[size];
+        }
+        if (index < LOCAL_CLASSES && useLocal())
+        {
+            byte[][] local = localHeap.get();
+            byte[] buffer = local[index];
+            if (buffer != null)
+            {
+                local[index] = null;
+                hits.increment();
+                return buffer;
+            }
+        }
+        byte[] buffer = sharedHeap[index].poll();
+        if (buffer != null)
+        {
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new byte[classSize(index)];
+    }
+
+    /**
+     * Gives the buffer back to the pool. Buffers that don't match a size class
+     * are ignored.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(byte[] buffer)
+    {
+        Objects.requireNonNull(buffer);
+        int index = exactClassOf(buffer.length);
+        if (index < 0)
+        {
+            return;
+        }
+        if (index < LOCAL_CLASSES && useLocal())
+        {
+            byte[][] local = localHeap.get();
+            if (local[index] == null)
+            {
+                local[index] = buffer;
+                return;
+            }
+        }
+        sharedHeap[index].offer(buffer, sharedCapacity);
+    }
+
+    /**
+     * Acquires a direct buffer with at least the given capacity. The returned
+     * buffer is cleared and its limit is set to {@code size}.
+     *
+     * @param size the minimum capacity of the buffer
+     * @return a cleared direct buffer
+     */
+    public ByteBuffer acquireDirect(int size)
+    {
+        int index = classOf(size);
+        if (index >= CLASSES)
+        {
+            misses.increment();
+            return ByteBuffer.allocateDirect(size);
+        }
+        ByteBuffer buffer = null;
+        if (index < LOCAL_CLASSES && useLocal())
+        {
+            ByteBuffer[] local = localDirect.get();
+            buffer = local[index];
+            local[index] = null;
+        }
+        if (buffer != null)
+        {
+            hits.increment();
+        } else
+        {
+            buffer = sharedDirect[index].poll();
+            if (buffer != null)
+            {
+                hits.increment();
+            } else
+            {
+                misses.increment();
+                buffer = ByteBuffer.allocateDirect(classSize(index));
+            }
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gives the direct buffer back to the pool. Buffers that are not direct or
+     * don't match a size class are ignored.
+     *
+     * @param buffer the buffer to release
+     */
+    public void releaseDirect(ByteBuffer buffer)
+    {
+        Objects.requireNonNull(buffer);
+        int index = exactClassOf(buffer.capacity());
+        if (!buffer.isDirect() || index < 0)
+        {
+            return;
+        }
+        if (index < LOCAL_CLASSES && useLocal())
+        {
+            ByteBuffer[] local = localDirect.get();
+            if (local[index] == null)
+            {
+                local[index] = buffer;
+                return;
+            }
+        }
+        sharedDirect[index].offer(buffer, sharedCapacity);
+    }
+
+    /**
+     * Checks whether the current thread can use the per thread cache, which is
+     * the case for all threads except virtual ones.
+     */
+    private static boolean useLocal()
+    {
+        if (IS_VIRTUAL == null)
+        {
+            return true;
+        }
+        try
+        {
+            return !(boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static MethodHandle findIsVirtual()
+    {
+        try
+        {
+            return MethodHandles.publicLookup().findVirtual(Thread.class,
+                    "isVirtual", MethodType.methodType(boolean.class));
+        } catch (ReflectiveOperationException ex)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Returns how many buffers could be taken from the pool.
+     *
+     * @return the number of pool hits
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns how many buffers had to be allocated because the pool had none
+     * available.
+     *
+     * @return the number of pool misses
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    private static int classOf(int size)
+    {
+        if (size <= MIN_SIZE)
+        {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int exactClassOf(int size)
+    {
+        if (size < MIN_SIZE || size > MAX_SIZE || Integer.bitCount(size) != 1)
+        {
+            return -1;
+        }
+        return Integer.numberOfTrailingZeros(size) - MIN_SHIFT;
+    }
+
+    private static int classSize(int index)
+    {
+        return 1 << (index + MIN_SHIFT);
+    }
+
+    private static final class Tier<T>
+    {
+
+        private final Queue<T> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        T poll()
+        {
+            T buffer = buffers.poll();
+            if (buffer != null)
+            {
+                count.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        void offer(T buffer, int capacity)
+        {
+            int current;
+            do
+            {
+                current = count.get();
+                if (current >= capacity)
+                {
+                    return;
+                }
+            } while (!count.compareAndSet(current, current + 1));
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import net.bplaced.clayn.jshed.JShed;
+import net.bplaced.clayn.jshed.util.ProgressingFuture;
+
+/**
+ * Task for many copies that run with a bounded concurrency. A fixed number of
+ * workers take the next copy from a shared index until all copies are done so
+ * no more than the allowed number of copies run at the same time.
+ * <p>
+ * The sizes of the sources aren't known in advance, so the progress is the
+ * fraction of finished copies. The reported work and therefore the throughput
+ * is counted in copies as well, the copied bytes are available through
+ * {@link #getCopiedBytes()}.
+ * <p>
+ * Once all copies are done the task completes with the results of all
+ * copies. Failing copies don't fail the task, their exception is in their
+ * result. Cancelling the task stops starting new copies, the copies that are
+ * running are finished. The task only fails if the I/O executor rejects all
+ * of its workers.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyAll(java.util.Collection, int)
+ */
+public final class BulkCopyTask extends ProgressingFuture<List<CopyResult>>
+{
+
+    private final List<Map.Entry<? extends DataSource, ? extends DataSink>> copies;
+    private final AtomicReferenceArray<CopyResult> results;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private final AtomicInteger workers = new AtomicInteger();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    private BulkCopyTask(
+            List<Map.Entry<? extends DataSource, ? extends DataSink>> copies)
+    {
+        this.copies = copies;
+        this.results = new AtomicReferenceArray<>(copies.size());
+        setProgressCoalescing(IOTools.PROGRESS_DELTA, 0, TimeUnit.MILLISECONDS);
+    }
+
+    static BulkCopyTask start(
+            Collection<? extends Map.Entry<? extends DataSource, ? extends DataSink>> copies,
+            int maxConcurrency)
+    {
+        if (maxConcurrency < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The concurrency must be at least 1: " + maxConcurrency);
+        }
+        BulkCopyTask task = new BulkCopyTask(new ArrayList<>(copies));
+        int count = Math.min(maxConcurrency, task.copies.size());
+        if (count == 0)
+        {
+            task.complete(Collections.emptyList());
+            return task;
+        }
+        task.workers.set(count);
+        for (int i = 0; i < count; i++)
+        {
+            try
+            {
+                JShed.getIOExecutor().execute(task::work);
+            } catch (RejectedExecutionException ex)
+            {
+                // Workers that were started take over the remaining copies
+                if (i == 0)
+                {
+                    task.fail(ex);
+                } else if (task.workers.addAndGet(i - count) == 0)
+                {
+                    task.complete(task.getResults());
+                }
+                break;
+            }
+        }
+        return task;
+    }
+
+    private void work()
+    {
+        try
+        {
+            int index;
+            while (!isCancelled()
+                    && (index = next.getAndIncrement()) < copies.size())
+            {
+                results.set(index, copy(copies.get(index)));
+                finished.increment();
+                reportWork(1);
+                fireProgressChanged(getProgress());
+            }
+        } finally
+        {
+            if (workers.decrementAndGet() == 0)
+            {
+                complete(getResults());
+            }
+        }
+    }
+
+    private CopyResult copy(
+            Map.Entry<? extends DataSource, ? extends DataSink> entry)
+    {
+        DataSource src = entry.getKey();
+        DataSink dest = entry.getValue();
+        try
+        {
+            long copied = IOTools.transfer(src, dest);
+            bytes.add(copied);
+            return new CopyResult(src, dest, copied, null);
+        } catch (Exception ex)
+        {
+            failed.increment();
+            return new CopyResult(src, dest, -1, ex);
+        }
+    }
+
+    /**
+     * Returns the results of all copies in the order they were given. While
+     * the task isn't done, the results for copies that haven't finished yet
+     * are {@code null}.
+     *
+     * @return an unmodifiable list of the results
+     */
+    public List<CopyResult> getResults()
+    {
+        CopyResult[] list = new CopyResult[results.length()];
+        for (int i = 0; i < list.length; i++)
+        {
+            list[i] = results.get(i);
+        }
+        return Collections.unmodifiableList(Arrays.asList(list));
+    }
+
+    public int getTotalCount()
+    {
+        return copies.size();
+    }
+
+    public long getFinishedCount()
+    {
+        return finished.sum();
+    }
+
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the number of bytes of all successfully finished copies.
+     *
+     * @return the number of copied bytes
+     */
+    public long getCopiedBytes()
+    {
+        return bytes.sum();
+    }
+
+    @Override
+    public double getProgress()
+    {
+        if (copies.isEmpty())
+        {
+            return 1;
+        }
+        return (finished.sum() * 1.0) / (copies.size() * 1.0);
+    }
+
+    @Override
+    protected long getTotalWork()
+    {
+        return copies.size();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * {@link InputStream} reading the remaining bytes of a sequence of
+ * {@link ByteBuffer}s. The buffers are read through duplicates so their
+ * positions aren't changed and they can be shared between streams.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+final class ByteBufferInputStream extends InputStream
+{
+
+    private final ByteBuffer[] buffers;
+    private int index = 0;
+
+    ByteBufferInputStream(ByteBuffer... buffers)
+    {
+        this.buffers = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            this.buffers[i] = buffers[i].duplicate();
+        }
+    }
+
+    @Override
+    public int read()
+    {
+        ByteBuffer current = current();
+        return current == null ? -1 : current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len)
+    {
+        Objects.requireNonNull(b);
+        if (off < 0 || len < 0 || len > b.length - off)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0)
+        {
+            return 0;
+        }
+        ByteBuffer current = current();
+        if (current == null)
+        {
+            return -1;
+        }
+        int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n)
+    {
+        long skipped = 0;
+        ByteBuffer current;
+        while (skipped < n && (current = current()) != null)
+        {
+            int count = (int) Math.min(n - skipped, current.remaining());
+            current.position(current.position() + count);
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+        long available = 0;
+        for (int i = index; i < buffers.length; i++)
+        {
+            available += buffers[i].remaining();
+        }
+        return (int) Math.min(available, Integer.MAX_VALUE);
+    }
+
+    private ByteBuffer current()
+    {
+        while (index < buffers.length)
+        {
+            if (buffers[index].hasRemaining())
+            {
+                return buffers[index];
+            }
+            buffers[index++] = null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link DataSink} that is backed by a file and can therefore provide a
+ * {@link FileChannel} to write to. Copy operations in {@link IOTools} use the
+ * channel to transfer the data directly inside the kernel where possible.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public interface ChannelSink extends DataSink
+{
+
+    /**
+     * Opens a new channel for writing the data of this sink. Like
+     * {@link #getSink()} any previous content gets truncated. The caller is
+     * responsible for closing the channel.
+     *
+     * @return a new writable channel positioned at the start of the data
+     * @throws IOException if the channel can't be opened
+     */
+    FileChannel getSinkChannel() throws IOException;
+}
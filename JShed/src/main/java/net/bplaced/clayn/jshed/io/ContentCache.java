@@ -0,0 +1,378 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache for the content of files that are read often. The content of a file
+ * is kept in a buffer that is shared by all streams reading it, so a cache
+ * hit neither opens the file nor copies its data. Entries are identified by
+ * the path together with the size and the modification time of the file, a
+ * changed file is therefore never served from the cache. The cache keeps at
+ * most the given number of bytes and evicts the least recently used files
+ * when this budget is exceeded. Files larger than the budget are read
+ * directly. Additionally the directories of cached files are watched and
+ * changed or deleted files are removed from the cache right away. Every
+ * cache owns a daemon thread for watching that ends when the cache is closed.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class ContentCache implements Closeable
+{
+
+    private final long maxBytes;
+    private final boolean direct;
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16,
+            0.75f, true);
+    private final Set<Path> watched = new HashSet<>();
+    private final WatchService watcher;
+    private final Thread watchThread;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long size = 0;
+
+    /**
+     * Creates a new cache that keeps the contents on the heap.
+     *
+     * @param maxBytes the maximum number of bytes to keep
+     * @throws IOException if the watch service can't be created
+     */
+    public ContentCache(long maxBytes) throws IOException
+    {
+        this(maxBytes, false);
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxBytes the maximum number of bytes to keep
+     * @param direct whether the contents should be kept in direct buffers
+     * outside of the heap
+     * @throws IOException if the watch service can't be created
+     */
+    public ContentCache(long maxBytes, boolean direct) throws IOException
+    {
+        if (maxBytes < 0)
+        {
+            throw new IllegalArgumentException(
+                    "The maximum size must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.direct = direct;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.watchThread = new Thread(this::watch, "jshed-content-cache-"
+                + COUNT.incrementAndGet());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Returns a source for the given file that reads through this cache.
+     *
+     * @param path the file to read
+     * @return a source for the file
+     */
+    public DataSource getSource(Path path)
+    {
+        Objects.requireNonNull(path);
+        return () -> open(path);
+    }
+
+    /**
+     * Opens a stream for the content of the given file. If the content is
+     * cached and the file wasn't changed, the stream reads the cached buffer.
+     * Otherwise the file is read and added to the cache.
+     *
+     * @param path the file to read
+     * @return a stream for the content of the file
+     * @throws IOException if the file can't be read
+     */
+    public InputStream open(Path path) throws IOException
+    {
+        Path key = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key,
+                BasicFileAttributes.class);
+        long length = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry;
+        synchronized (entries)
+        {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.matches(length, modified))
+        {
+            hits.increment();
+            return new ByteBufferInputStream(entry.content);
+        }
+        misses.increment();
+        if (length > maxBytes || length > Integer.MAX_VALUE)
+        {
+            invalidate(key);
+            return Files.newInputStream(key);
+        }
+        entry = new Entry(load(key, (int) length), length, modified);
+        put(key, entry);
+        return new ByteBufferInputStream(entry.content);
+    }
+
+    /**
+     * Removes the given file from the cache.
+     *
+     * @param path the file to remove
+     */
+    public void invalidate(Path path)
+    {
+        Path key = path.toAbsolutePath().normalize();
+        synchronized (entries)
+        {
+            Entry removed = entries.remove(key);
+            if (removed != null)
+            {
+                size -= removed.length;
+            }
+        }
+    }
+
+    /**
+     * Removes all files from the cache.
+     */
+    public void invalidateAll()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns the number of bytes that are currently cached.
+     *
+     * @return the cached bytes
+     */
+    public long getSize()
+    {
+        synchronized (entries)
+        {
+            return size;
+        }
+    }
+
+    public int getEntryCount()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Clears the cache, stops watching the directories of cached files and
+     * waits for the watching thread to end.
+     *
+     * @throws IOException if the watch service can't be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        invalidateAll();
+        watcher.close();
+        if (Thread.currentThread() != watchThread)
+        {
+            try
+            {
+                watchThread.join();
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private ByteBuffer load(Path path, int length) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer content = direct ? ByteBuffer.allocateDirect(length)
+                    : ByteBuffer.allocate(length);
+            while (content.hasRemaining())
+            {
+                if (channel.read(content) == -1)
+                {
+                    break;
+                }
+            }
+            content.flip();
+            return content.asReadOnlyBuffer();
+        }
+    }
+
+    private void put(Path key, Entry entry)
+    {
+        Path dir = key.getParent();
+        synchronized (entries)
+        {
+            if (dir != null && watched.add(dir))
+            {
+                try
+                {
+                    dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+                } catch (ClosedWatchServiceException ex)
+                {
+                    // Closed caches still serve files but don't keep them
+                    return;
+                } catch (IOException ex)
+                {
+                    // Changes are still detected by the size and time
+                    watched.remove(dir);
+                }
+            }
+            Entry old = entries.put(key, entry);
+            if (old != null)
+            {
+                size -= old.length;
+            }
+            size += entry.length;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (size > maxBytes && iterator.hasNext())
+            {
+                size -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Waits for changes in the watched directories and removes the changed
+     * files until the watch service is closed.
+     */
+    private void watch()
+    {
+        try
+        {
+            while (true)
+            {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    {
+                        invalidateDirectory(dir);
+                    } else
+                    {
+                        invalidate(dir.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset())
+                {
+                    invalidateDirectory(dir);
+                    synchronized (entries)
+                    {
+                        watched.remove(dir);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException ex)
+        {
+            // The cache was closed
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void invalidateDirectory(Path dir)
+    {
+        synchronized (entries)
+        {
+            Iterator<Map.Entry<Path, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<Path, Entry> next = iterator.next();
+                if (dir.equals(next.getKey().getParent()))
+                {
+                    size -= next.getValue().length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Entry
+    {
+
+        private final ByteBuffer content;
+        private final long length;
+        private final long modified;
+
+        private Entry(ByteBuffer content, long length, long modified)
+        {
+            this.content = content;
+            this.length = length;
+            this.modified = modified;
+        }
+
+        private boolean matches(long length, long modified)
+        {
+            return this.length == length && this.modified == modified;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.bplaced.clayn.jshed.util.ProgressingFuture;
+
+/**
+ * The task for a copy that is running in the background. Besides the progress
+ * it provides the number of copied bytes as result once the copy is done. If
+ * the copy fails the exception is available through {@link #get()} or
+ * {@link #getError()}. The copied bytes are reported as work, so the
+ * throughput of the task is given in bytes per second.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class CopyFuture extends ProgressingFuture<Long>
+{
+
+    private final long total;
+    private final AtomicLong copied = new AtomicLong(0);
+
+    /**
+     * @param total the number of bytes that will be copied or {@code -1} if
+     * unknown
+     */
+    CopyFuture(long total)
+    {
+        this.total = total;
+        setProgressCoalescing(IOTools.PROGRESS_DELTA, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of bytes to copy.
+     *
+     * @return the total number of bytes or {@code -1} if unknown
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Returns the number of bytes that were copied so far.
+     *
+     * @return the number of copied bytes
+     */
+    public long getCopied()
+    {
+        return copied.get();
+    }
+
+    @Override
+    public double getProgress()
+    {
+        if (total > 0)
+        {
+            return (copied.get() * 1.0) / (total * 1.0);
+        }
+        return getState() == State.COMPLETED ? 1 : -1;
+    }
+
+    void advance(long bytes)
+    {
+        copied.addAndGet(bytes);
+        reportWork(bytes);
+        fireProgressChanged(getProgress());
+    }
+
+    void complete()
+    {
+        complete(copied.get());
+    }
+
+    @Override
+    protected boolean fail(Throwable error)
+    {
+        return super.fail(error);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.zip.Checksum;
+
+/**
+ * Observes the bytes while they are copied. Observers are passed to
+ * {@link IOTools#copy(DataSource, DataSink, CopyObserver...)} to compute
+ * values like checksums or digests over the copied data without reading it a
+ * second time.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+@FunctionalInterface
+public interface CopyObserver
+{
+
+    /**
+     * Called for every block of data in the order it is copied.
+     *
+     * @param data the buffer containing the data
+     * @param offset the offset of the data in the buffer
+     * @param length the number of bytes
+     */
+    void update(byte[] data, int offset, int length);
+
+    /**
+     * Creates an observer that updates the given checksum.
+     *
+     * @param checksum the checksum to update
+     * @return a new observer for the checksum
+     */
+    static ChecksumObserver of(Checksum checksum)
+    {
+        return new ChecksumObserver(checksum);
+    }
+
+    /**
+     * Creates an observer that updates the given digest.
+     *
+     * @param digest the digest to update
+     * @return a new observer for the digest
+     */
+    static DigestObserver of(MessageDigest digest)
+    {
+        return new DigestObserver(digest);
+    }
+
+    /**
+     * {@link CopyObserver} computing a {@link Checksum}.
+     */
+    public static final class ChecksumObserver implements CopyObserver
+    {
+
+        private final Checksum checksum;
+
+        ChecksumObserver(Checksum checksum)
+        {
+            this.checksum = Objects.requireNonNull(checksum);
+        }
+
+        @Override
+        public void update(byte[] data, int offset, int length)
+        {
+            checksum.update(data, offset, length);
+        }
+
+        public Checksum getChecksum()
+        {
+            return checksum;
+        }
+
+        /**
+         * Returns the value of the checksum for all observed data.
+         *
+         * @return the checksum value
+         */
+        public long getValue()
+        {
+            return checksum.getValue();
+        }
+    }
+
+    /**
+     * {@link CopyObserver} computing a {@link MessageDigest}.
+     */
+    public static final class DigestObserver implements CopyObserver
+    {
+
+        private final MessageDigest digest;
+        private byte[] result;
+
+        DigestObserver(MessageDigest digest)
+        {
+            this.digest = Objects.requireNonNull(digest);
+        }
+
+        @Override
+        public void update(byte[] data, int offset, int length)
+        {
+            digest.update(data, offset, length);
+        }
+
+        public MessageDigest getDigest()
+        {
+            return digest;
+        }
+
+        /**
+         * Returns the digest for all observed data. The digest is computed at
+         * the first call, later calls return the same value.
+         *
+         * @return the digest value
+         */
+        public synchronized byte[] getValue()
+        {
+            if (result == null)
+            {
+                result = digest.digest();
+            }
+            return result.clone();
+        }
+    }
+}
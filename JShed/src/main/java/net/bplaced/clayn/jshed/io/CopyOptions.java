@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+/**
+ * Options for copying a directory tree using
+ * {@link IOTools#copyTree(java.nio.file.Path, java.nio.file.Path, CopyOptions)}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class CopyOptions
+{
+
+    private boolean overwrite = false;
+    private boolean copyAttributes = false;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public boolean isOverwrite()
+    {
+        return overwrite;
+    }
+
+    /**
+     * Sets whether existing files in the destination are replaced. If not, the
+     * copy fails when a file already exists. Defaults to {@code false}.
+     *
+     * @param overwrite {@code true} to replace existing files
+     */
+    public void setOverwrite(boolean overwrite)
+    {
+        this.overwrite = overwrite;
+    }
+
+    public boolean isCopyAttributes()
+    {
+        return copyAttributes;
+    }
+
+    /**
+     * Sets whether the last modified time of files and directories is copied
+     * too. Defaults to {@code false}.
+     *
+     * @param copyAttributes {@code true} to copy the last modified time
+     */
+    public void setCopyAttributes(boolean copyAttributes)
+    {
+        this.copyAttributes = copyAttributes;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads that copy concurrently. Defaults to the
+     * number of available processors.
+     *
+     * @param parallelism the number of threads
+     */
+    public void setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+}
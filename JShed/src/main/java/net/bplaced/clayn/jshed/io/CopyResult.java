@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a single copy from a {@link DataSource} to a {@link DataSink}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class CopyResult
+{
+
+    private final DataSource source;
+    private final DataSink sink;
+    private final long bytes;
+    private final Exception error;
+    private final List<CopyObserver> observers;
+
+    CopyResult(DataSource source, DataSink sink, long bytes, Exception error)
+    {
+        this(source, sink, bytes, error, Collections.emptyList());
+    }
+
+    CopyResult(DataSource source, DataSink sink, long bytes, Exception error,
+            List<CopyObserver> observers)
+    {
+        this.source = source;
+        this.sink = sink;
+        this.bytes = bytes;
+        this.error = error;
+        this.observers = observers;
+    }
+
+    public DataSource getSource()
+    {
+        return source;
+    }
+
+    public DataSink getSink()
+    {
+        return sink;
+    }
+
+    /**
+     * Returns the number of copied bytes.
+     *
+     * @return the number of copied bytes or {@code -1} if the copy failed
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the exception that stopped the copy.
+     *
+     * @return the exception or {@code null} if the copy was successful
+     */
+    public Exception getError()
+    {
+        return error;
+    }
+
+    /**
+     * Returns the observers that saw the copied data in the order they were
+     * given for the copy.
+     *
+     * @return an unmodifiable list of the observers
+     */
+    public List<CopyObserver> getObservers()
+    {
+        return observers;
+    }
+
+    /**
+     * Returns the observer at the given index casted to the expected type.
+     *
+     * @param <T> the type of the observer
+     * @param index the index of the observer
+     * @return the observer at the index
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends CopyObserver> T getObserver(int index)
+    {
+        return (T) observers.get(index);
+    }
+
+    public boolean isSuccessful()
+    {
+        return error == null;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Incremental copy that only writes blocks that differ from a
+ * {@link BlockSignature}. Blocks are only compared with the block at the same
+ * position of the destination, data that was shifted by inserting or removing
+ * bytes isn't detected and everything after the change is written again.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyDelta(DataSource, RandomAccessSink, BlockSignature)
+ */
+final class DeltaCopy
+{
+
+    private DeltaCopy()
+    {
+    }
+
+    static long copy(DataSource src, FileChannel out,
+            BlockSignature signature) throws IOException
+    {
+        int blockSize = signature.getBlockSize();
+        MessageDigest md5 = BlockSignature.newDigest();
+        BufferPool pool = BufferPool.getDefault();
+        byte[] block = pool.acquire(blockSize);
+        try (InputStream in = src.getSource())
+        {
+            long written = 0;
+            long position = 0;
+            int index = 0;
+            int read;
+            while ((read = readBlock(in, block, blockSize)) > 0)
+            {
+                int weak = BlockSignature.weakChecksum(block, read);
+                if (!unchanged(signature, index, weak, block, read, out,
+                        position, md5))
+                {
+                    ByteBuffer buffer = ByteBuffer.wrap(block, 0, read);
+                    while (buffer.hasRemaining())
+                    {
+                        out.write(buffer, position + buffer.position());
+                    }
+                    written += read;
+                    signature.set(index, weak, null);
+                }
+                position += read;
+                index++;
+            }
+            if (out.size() > position)
+            {
+                out.truncate(position);
+            }
+            signature.truncate(index, position);
+            return written;
+        } finally
+        {
+            pool.release(block);
+        }
+    }
+
+    /**
+     * Checks whether the block equals the block of the destination at the
+     * same position. The strong hash is only computed if the length and the
+     * weak checksum match. If the signature doesn't know the strong hash of
+     * the destination block yet it is computed from the destination.
+     */
+    private static boolean unchanged(BlockSignature signature, int index,
+            int weak, byte[] block, int read, FileChannel out, long position,
+            MessageDigest md5) throws IOException
+    {
+        if (signature.blockLength(index) != read
+                || !signature.matchesWeak(index, weak))
+        {
+            return false;
+        }
+        if (!signature.hasStrong(index))
+        {
+            BufferPool pool = BufferPool.getDefault();
+            byte[] current = pool.acquire(read);
+            try
+            {
+                if (BlockSignature.readBlock(out, current, read, position) != read)
+                {
+                    return false;
+                }
+                md5.update(current, 0, read);
+                signature.set(index, weak, md5.digest());
+            } finally
+            {
+                pool.release(current);
+            }
+        }
+        md5.update(block, 0, read);
+        return signature.matchesStrong(index, md5.digest());
+    }
+
+    private static int readBlock(InputStream in, byte[] block, int size) throws IOException
+    {
+        int total = 0;
+        while (total < size)
+        {
+            int read = in.read(block, total, size - total);
+            if (read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * Copies one source to many sinks while reading the source only once. Every
+ * sink has its own writer on the dedicated executor of {@link JShed} with a
+ * bounded queue of chunks. The chunks are shared between the writers and go back to
+ * the {@link BufferPool} after the last writer is done with them.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyToAll(DataSource, java.util.Collection, int)
+ */
+final class FanOutCopy
+{
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private FanOutCopy()
+    {
+    }
+
+    static List<CopyResult> copy(DataSource src, List<? extends DataSink> sinks,
+            int queueSize) throws IOException
+    {
+        BufferPool pool = BufferPool.getDefault();
+        List<Writer> writers = new ArrayList<>(sinks.size());
+        CountDownLatch finished = new CountDownLatch(sinks.size());
+        try (InputStream in = src.getSource())
+        {
+            for (DataSink sink : sinks)
+            {
+                Writer writer = new Writer(sink, queueSize, finished);
+                writers.add(writer);
+                try
+                {
+                    JShed.getDedicatedExecutor().execute(writer);
+                } catch (RejectedExecutionException ex)
+                {
+                    writer.reject(ex);
+                }
+            }
+            IOException failure = null;
+            try
+            {
+                int read;
+                do
+                {
+                    byte[] buffer = pool.acquire(CHUNK_SIZE);
+                    read = readChunk(in, buffer);
+                    if (read <= 0)
+                    {
+                        pool.release(buffer);
+                        break;
+                    }
+                    Chunk chunk = new Chunk(buffer, read, writers.size());
+                    for (Writer writer : writers)
+                    {
+                        writer.deliver(chunk);
+                    }
+                } while (read == CHUNK_SIZE);
+            } catch (IOException ex)
+            {
+                failure = ex;
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException();
+            }
+            for (Writer writer : writers)
+            {
+                writer.finish(failure);
+            }
+            awaitWriters(finished);
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+        List<CopyResult> results = new ArrayList<>(writers.size());
+        for (Writer writer : writers)
+        {
+            results.add(new CopyResult(src, writer.sink,
+                    writer.error == null ? writer.written : -1, writer.error));
+        }
+        return results;
+    }
+
+    private static void awaitWriters(CountDownLatch finished) throws IOException
+    {
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                finished.await();
+                break;
+            } catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException
+    {
+        int total = 0;
+        while (total < CHUNK_SIZE)
+        {
+            int read = in.read(buffer, total, CHUNK_SIZE - total);
+            if (read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static final class Chunk
+    {
+
+        static final Chunk END = new Chunk(null, 0, 0);
+
+        final byte[] data;
+        final int length;
+        private final AtomicInteger references;
+
+        Chunk(byte[] data, int length, int references)
+        {
+            this.data = data;
+            this.length = length;
+            this.references = new AtomicInteger(references);
+        }
+
+        void release()
+        {
+            if (references.decrementAndGet() == 0)
+            {
+                BufferPool.getDefault().release(data);
+            }
+        }
+    }
+
+    private static final class Writer implements Runnable
+    {
+
+        final DataSink sink;
+        final BlockingQueue<Chunk> queue;
+        private final CountDownLatch finished;
+        volatile Exception error = null;
+        volatile long written = 0;
+        private volatile IOException sourceFailure = null;
+        private volatile boolean stopped = false;
+
+        Writer(DataSink sink, int queueSize, CountDownLatch finished)
+        {
+            this.sink = sink;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.finished = finished;
+        }
+
+        /**
+         * Puts the chunk into the queue of this writer. If the writer stopped
+         * unexpectedly the chunk is released instead.
+         */
+        void deliver(Chunk chunk) throws InterruptedException
+        {
+            while (!stopped)
+            {
+                if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS))
+                {
+                    return;
+                }
+            }
+            chunk.release();
+        }
+
+        /**
+         * Stops this writer without running it because it couldn't be
+         * started.
+         */
+        void reject(RuntimeException ex)
+        {
+            error = ex;
+            stopped = true;
+            finished.countDown();
+        }
+
+        void finish(IOException failure)
+        {
+            sourceFailure = failure;
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    deliver(Chunk.END);
+                    break;
+                } catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            OutputStream out = null;
+            try
+            {
+                out = sink.getSink();
+            } catch (IOException | RuntimeException ex)
+            {
+                error = ex;
+            }
+            try
+            {
+                Chunk chunk;
+                while ((chunk = queue.take()) != Chunk.END)
+                {
+                    try
+                    {
+                        if (error == null)
+                        {
+                            out.write(chunk.data, 0, chunk.length);
+                            written += chunk.length;
+                        }
+                    } catch (IOException | RuntimeException ex)
+                    {
+                        error = ex;
+                    } finally
+                    {
+                        chunk.release();
+                    }
+                }
+                if (error == null && sourceFailure != null)
+                {
+                    error = sourceFailure;
+                }
+                if (out != null)
+                {
+                    try
+                    {
+                        if (error == null)
+                        {
+                            out.flush();
+                        }
+                    } finally
+                    {
+                        out.close();
+                    }
+                }
+            } catch (IOException | RuntimeException ex)
+            {
+                if (error == null)
+                {
+                    error = ex;
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                error = ex;
+            } finally
+            {
+                stopped = true;
+                finished.countDown();
+            }
+        }
+    }
+}
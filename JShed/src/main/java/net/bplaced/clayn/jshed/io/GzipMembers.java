@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reading and writing of independent gzip members (RFC 1952) used by
+ * {@link ParallelGzipSink} and {@link ParallelGzipSource}. Every member
+ * written by this class has an extra field with the subfield ID {@code JS}
+ * containing the total size of the member. This allows a reader to find the
+ * members without inflating them while other gzip readers simply ignore the
+ * field.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+final class GzipMembers
+{
+
+    private static final int MAGIC_1 = 0x1f;
+    private static final int MAGIC_2 = 0x8b;
+    private static final int DEFLATE = 8;
+    private static final int FLAG_EXTRA = 4;
+    private static final int OS_UNKNOWN = 255;
+    private static final int SUBFIELD_1 = 'J';
+    private static final int SUBFIELD_2 = 'S';
+    private static final int SUBFIELD_LENGTH = 4;
+    private static final int EXTRA_LENGTH = 4 + SUBFIELD_LENGTH;
+    /**
+     * The size of the header written by this class.
+     */
+    static final int HEADER_SIZE = 10 + 2 + EXTRA_LENGTH;
+    private static final int TRAILER_SIZE = 8;
+    /**
+     * Deflate can't compress data by more than this factor, a bigger size in
+     * the trailer can't be valid.
+     */
+    private static final int MAX_RATIO = 1032;
+    /**
+     * The maximum size of a buffer that is allocated before the data for it
+     * was read. Bigger buffers grow with the data, so sizes in corrupt or
+     * crafted input can't cause huge allocations.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private GzipMembers()
+    {
+    }
+
+    /**
+     * Compresses the data into a complete gzip member.
+     *
+     * @return the bytes of the member
+     */
+    static byte[] compress(byte[] data, int length, int level)
+    {
+        Deflater deflater = new Deflater(level, true);
+        try
+        {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] member = new byte[HEADER_SIZE + length + (length >> 4) + 64];
+            int size = HEADER_SIZE;
+            while (!deflater.finished())
+            {
+                if (size == member.length)
+                {
+                    member = Arrays.copyOf(member, member.length * 2);
+                }
+                size += deflater.deflate(member, size, member.length - size);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            member = Arrays.copyOf(member, size + TRAILER_SIZE);
+            writeInt(member, size, (int) crc.getValue());
+            writeInt(member, size + 4, length);
+            member[0] = (byte) MAGIC_1;
+            member[1] = (byte) MAGIC_2;
+            member[2] = DEFLATE;
+            member[3] = FLAG_EXTRA;
+            member[9] = (byte) OS_UNKNOWN;
+            member[10] = EXTRA_LENGTH;
+            member[12] = SUBFIELD_1;
+            member[13] = SUBFIELD_2;
+            member[14] = SUBFIELD_LENGTH;
+            writeInt(member, 16, member.length);
+            return member;
+        } finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads the next member if it was written by this class. Otherwise the
+     * bytes read for checking the header are pushed back so that the stream
+     * can be read by a common gzip reader.
+     *
+     * @param in the stream to read from. Must be able to push back at least
+     * {@link #HEADER_SIZE} bytes
+     * @return the bytes of the member following the header, an empty array if
+     * the end of the stream was reached or {@code null} if the member wasn't
+     * written by this class
+     */
+    static byte[] readMember(PushbackInputStream in) throws IOException
+    {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = readFully(in, header, 0, HEADER_SIZE);
+        if (read == 0)
+        {
+            return new byte[0];
+        }
+        if (read < HEADER_SIZE || (header[0] & 0xff) != MAGIC_1
+                || (header[1] & 0xff) != MAGIC_2 || header[2] != DEFLATE
+                || header[3] != FLAG_EXTRA || header[10] != EXTRA_LENGTH
+                || header[11] != 0 || header[12] != SUBFIELD_1
+                || header[13] != SUBFIELD_2 || header[14] != SUBFIELD_LENGTH
+                || header[15] != 0)
+        {
+            in.unread(header, 0, read);
+            return null;
+        }
+        int size = readInt(header, 16);
+        if (size < HEADER_SIZE + TRAILER_SIZE || size > MAX_ARRAY_SIZE)
+        {
+            throw new ZipException("Invalid gzip member size: " + size);
+        }
+        int length = size - HEADER_SIZE;
+        byte[] rest = new byte[Math.min(length, INITIAL_BUFFER_SIZE)];
+        int total = 0;
+        while (total < length)
+        {
+            if (total == rest.length)
+            {
+                rest = Arrays.copyOf(rest, (int) Math.min(length,
+                        rest.length * 2L));
+            }
+            int count = readFully(in, rest, total, rest.length - total);
+            if (count < rest.length - total)
+            {
+                throw new EOFException("Truncated gzip member");
+            }
+            total += count;
+        }
+        return rest;
+    }
+
+    /**
+     * Inflates the rest of a member as returned by
+     * {@link #readMember(java.io.PushbackInputStream)}.
+     *
+     * @return the uncompressed data
+     */
+    static byte[] decompress(byte[] rest) throws IOException
+    {
+        int length = rest.length;
+        int expectedCrc = readInt(rest, length - TRAILER_SIZE);
+        int size = readInt(rest, length - 4);
+        if (size < 0 || size > MAX_ARRAY_SIZE
+                || size > (long) length * MAX_RATIO)
+        {
+            throw new ZipException("Invalid gzip member size: " + size);
+        }
+        byte[] data = new byte[(int) Math.min(size,
+                Math.max(INITIAL_BUFFER_SIZE, length * 4L))];
+        Inflater inflater = new Inflater(true);
+        try
+        {
+            inflater.setInput(rest, 0, length);
+            int inflated = 0;
+            while (!inflater.finished() && inflated < size)
+            {
+                if (inflated == data.length)
+                {
+                    data = Arrays.copyOf(data, (int) Math.min(size,
+                            data.length * 2L));
+                }
+                int count = inflater.inflate(data, inflated,
+                        data.length - inflated);
+                if (count == 0 && (inflater.needsInput()
+                        || inflater.needsDictionary()))
+                {
+                    throw new EOFException("Truncated gzip member");
+                }
+                inflated += count;
+            }
+            if (inflated != size)
+            {
+                throw new ZipException("Corrupt gzip member");
+            }
+        } catch (DataFormatException ex)
+        {
+            throw new ZipException(ex.getMessage());
+        } finally
+        {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        if ((int) crc.getValue() != expectedCrc)
+        {
+            throw new ZipException("Corrupt gzip member (bad CRC)");
+        }
+        return data;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset,
+            int length) throws IOException
+    {
+        int total = 0;
+        while (total < length)
+        {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value)
+    {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readInt(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8
+                | (buffer[offset + 2] & 0xff) << 16
+                | (buffer[offset + 3] & 0xff) << 24;
+    }
+}
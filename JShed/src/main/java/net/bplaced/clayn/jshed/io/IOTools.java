@@ -23,17 +23,23 @@
  */
 package net.bplaced.clayn.jshed.io;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import net.bplaced.clayn.jshed.JShed;
-import net.bplaced.clayn.jshed.util.ProgressingTask;
 
 /**
  *
@@ -42,81 +48,473 @@ import net.bplaced.clayn.jshed.util.ProgressingTask;
 public final class IOTools
 {
 
+    /**
+     * The minimum change of the progress before the tasks created by this
+     * class notify their listeners.
+     */
+    static final double PROGRESS_DELTA = 0.001;
+    private static final CopyObserver[] NO_OBSERVERS = new CopyObserver[0];
+
     private IOTools()
     {
     }
 
-    public static ProgressingTask copyAsync(InputStream src, OutputStream dest,
+    /**
+     * Copies the stream in the background on the I/O executor of
+     * {@link JShed}. The copy checks for cancellation between two blocks. The
+     * returned future completes with the number of copied bytes or fails with
+     * the exception that stopped the copy. If the executor rejects the copy the
+     * future fails with the {@link RejectedExecutionException}.
+     *
+     * @param src the stream to read from
+     * @param dest the stream to write to
+     * @param amount the number of bytes that will be copied or a value below
+     * {@code 1} if unknown. Only used for the progress
+     * @return a future for the running copy
+     */
+    public static CopyFuture copyAsync(InputStream src, OutputStream dest,
             long amount)
     {
-        long max = amount;
-        AtomicLong current = new AtomicLong(0);
-        AtomicBoolean done = new AtomicBoolean(false);
-        ProgressingTask progress = new ProgressingTask()
-        {
-
-            @Override
-            public double getProgress()
-            {
-                return max > 0 ? (current.get() * 1.0) / (max * 1.0) : -1;
-            }
-
-            public boolean isDone()
-            {
-                return done.get();
-            }
-
-        };
+        CopyFuture future = new CopyFuture(amount > 0 ? amount : -1);
         Runnable task = new Runnable()
         {
             @Override
             public void run()
             {
+                BufferPool pool = BufferPool.getDefault();
+                byte[] buffer = pool.acquire(BufferPool.sizeFor(amount));
                 try
                 {
-                    byte[] buffer = new byte[256];
                     int read;
-                    while ((read = src.read(buffer)) != -1)
+                    while (!future.isCancelled()
+                            && (read = src.read(buffer)) != -1)
                     {
                         dest.write(buffer, 0, read);
-                        current.addAndGet(read);
-                        if (progress.getOnProgressChanged() != null)
-                        {
-                            progress.getOnProgressChanged().accept(
-                                    progress.getProgress());
-                        }
+                        future.advance(read);
                     }
                     dest.flush();
-                    done.set(true);
-                } catch (IOException ex)
+                    future.complete();
+                } catch (IOException | RuntimeException ex)
+                {
+                    future.fail(ex);
+                } finally
                 {
-                    throw new RuntimeException(ex);
+                    pool.release(buffer);
                 }
             }
         };
-        JShed.getExecutorService().execute(task);
-        return progress;
+        try
+        {
+            JShed.getIOExecutor().execute(task);
+        } catch (RejectedExecutionException ex)
+        {
+            future.fail(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Copies the given file in the background using asynchronous file
+     * channels. The copy doesn't occupy a thread while waiting for I/O, the
+     * completion handlers run on the I/O executor of {@link JShed}. The returned
+     * future completes with the number of copied bytes or exceptionally if the
+     * copy fails.
+     *
+     * @param src the file to copy
+     * @param dest the file to copy to. Existing content gets replaced
+     * @return a future for the running copy
+     * @throws IOException if one of the files can't be opened
+     */
+    public static CopyFuture copyAsync(Path src, Path dest) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        return AsyncFileCopy.start(src, dest);
+    }
+
+    /**
+     * Copies the given file in the background and records the progress in a
+     * checkpoint file, so a copy that gets interrupted can be continued by
+     * calling this method again. Every 16 MB the destination is forced to the
+     * storage and the committed offset is written to the checkpoint together
+     * with the size and modification time of the source. If {@code verify} is
+     * set, a hash of the last 64 KB before the offset is stored as well and
+     * compared against the destination before resuming. A checkpoint that
+     * doesn't match anymore is ignored and the copy starts from the
+     * beginning. Cancelling the copy writes a final checkpoint, a completed
+     * copy deletes it.
+     *
+     * @param src the file to copy
+     * @param dest the file to copy to
+     * @param checkpoint the file to store the checkpoint in
+     * @param verify whether the destination should be verified by a hash
+     * before resuming
+     * @return a future for the running copy. It completes with the number of
+     * bytes copied by this call and its progress only covers these bytes
+     * @throws IOException if the source can't be accessed
+     */
+    public static CopyFuture copyResumable(Path src, Path dest, Path checkpoint,
+            boolean verify) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        Objects.requireNonNull(checkpoint);
+        return ResumableCopy.start(src, dest, checkpoint, verify);
+    }
+
+    /**
+     * Copies the given file by splitting it into up to {@code chunks} ranges
+     * that are copied concurrently on the I/O executor of {@link JShed}. The
+     * ranges are at least one MB big so small files may use less ranges. The
+     * returned future reports the combined progress of all ranges and
+     * completes with the number of copied bytes. If a range fails, the other
+     * ranges stop and the future fails with the exception.
+     *
+     * @param src the file to copy
+     * @param dest the file to copy to. Existing content gets replaced
+     * @param chunks the maximum number of ranges to copy concurrently
+     * @return a future for the running copy
+     * @throws IOException if one of the files can't be opened
+     */
+    public static CopyFuture copyParallel(Path src, Path dest, int chunks) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        return ParallelFileCopy.start(src, dest, chunks);
     }
 
     public static void copy(InputStream src, OutputStream dest) throws IOException
     {
         Objects.requireNonNull(src);
         Objects.requireNonNull(dest);
-        byte[] buffer = new byte[256];
-        int read;
-        while ((read = src.read(buffer)) != -1)
+        transfer(src, dest);
+    }
+
+    /**
+     * Copies all data from the given source to the given sink. If both are
+     * backed by files (see {@link ChannelSource} and {@link ChannelSink}) the
+     * data is transfered between the file channels without being copied into
+     * the heap. Otherwise the streams of source and sink are used.
+     *
+     * @param src the source to read from
+     * @param dest the sink to write to
+     * @throws IOException if an I/O error occurs while copying
+     */
+    public static void copy(DataSource src, DataSink dest) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        transfer(src, dest);
+    }
+
+    /**
+     * Copies all data from the given source to the given sink while passing
+     * every copied block to the given observers. This allows computing
+     * checksums or digests of the data in the same pass, for example:
+     * <pre>{@code
+     * CopyResult result = IOTools.copy(src, dest,
+     *         CopyObserver.of(new CRC32()),
+     *         CopyObserver.of(MessageDigest.getInstance("SHA-256")));
+     * long crc = result.<ChecksumObserver>getObserver(0).getValue();
+     * byte[] sha = result.<DigestObserver>getObserver(1).getValue();
+     * }</pre> Since the observers need the data on the heap the channel
+     * transfer of {@link #copy(DataSource, DataSink)} isn't used if observers
+     * are given.
+     *
+     * @param src the source to read from
+     * @param dest the sink to write to
+     * @param observers the observers for the copied data
+     * @return the result containing the number of copied bytes and the
+     * observers
+     * @throws IOException if an I/O error occurs while copying
+     */
+    public static CopyResult copy(DataSource src, DataSink dest,
+            CopyObserver... observers) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        List<CopyObserver> list = Collections.unmodifiableList(
+                Arrays.asList(observers.clone()));
+        long bytes;
+        if (list.isEmpty())
+        {
+            bytes = transfer(src, dest);
+        } else
         {
-            dest.write(buffer, 0, read);
+            try (InputStream in = src.getSource(); OutputStream out = dest.getSink())
+            {
+                bytes = transfer(in, out, observers);
+            }
         }
-        dest.flush();
+        return new CopyResult(src, dest, bytes, null, list);
     }
 
-    public static void copy(DataSource src, DataSink dest) throws IOException
+    /**
+     * Copies the source to the sink by only writing the blocks that differ
+     * from the current content of the sink. The signature of the sink is
+     * computed by reading it first. This is useful for large files that
+     * change only slightly between copies.
+     *
+     * @param src the source to read from
+     * @param dest the sink to update
+     * @return the number of bytes that were actually written to the sink
+     * @throws IOException if an I/O error occurs while copying
+     * @see #copyDelta(DataSource, RandomAccessSink, BlockSignature)
+     */
+    public static long copyDelta(DataSource src, RandomAccessSink dest) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        try (FileChannel channel = dest.getRandomAccessChannel())
+        {
+            BlockSignature signature = BlockSignature.compute(channel,
+                    BlockSignature.DEFAULT_BLOCK_SIZE);
+            return DeltaCopy.copy(src, channel, signature);
+        }
+    }
+
+    /**
+     * Copies the source to the sink by only writing the blocks that differ
+     * from the given signature of the sink. Every block of the source is
+     * compared against the block at the same position using the weak checksum
+     * first and the strong hash only if the weak checksum matches. Blocks
+     * that match are skipped, all others are written at their position. The
+     * comparison is block aligned, so inserting or removing bytes causes all
+     * following blocks to be written. The signature must describe the current
+     * content of the sink, the sink is only read to compute missing strong
+     * hashes. After the copy the signature is updated to describe the new
+     * content so it can be stored and used for the next copy.
+     *
+     * @param src the source to read from
+     * @param dest the sink to update
+     * @param signature the signature of the current content of the sink
+     * @return the number of bytes that were actually written to the sink
+     * @throws IOException if an I/O error occurs while copying
+     */
+    public static long copyDelta(DataSource src, RandomAccessSink dest,
+            BlockSignature signature) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        Objects.requireNonNull(signature);
+        try (FileChannel channel = dest.getRandomAccessChannel())
+        {
+            return DeltaCopy.copy(src, channel, signature);
+        }
+    }
+
+    /**
+     * Copies the source to the sink while preserving holes. The data is
+     * checked in blocks of 4 KB and blocks that only contain zeros aren't
+     * written but skipped on the channel of the sink. On file systems that
+     * support sparse files the skipped blocks stay unallocated, so sparse
+     * files keep their size on disk and writing large runs of zeros costs
+     * nothing. The content of the sink is the same as with
+     * {@link #copy(DataSource, DataSink)}.
+     *
+     * @param src the source to read from
+     * @param dest the sink to write to
+     * @return the number of bytes that were actually written to the sink
+     * @throws IOException if an I/O error occurs while copying
+     */
+    public static long copySparse(ChannelSource src, ChannelSink dest) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        try (FileChannel in = src.getSourceChannel();
+                FileChannel out = dest.getSinkChannel())
+        {
+            return SparseCopy.copy(in, out);
+        }
+    }
+
+    /**
+     * Copies the given directory tree in the background. The tree is
+     * traversed and copied by a fork join pool with the parallelism of the
+     * given options, every directory is created before its content is copied.
+     * Files are transfered between file channels. The returned task counts the
+     * files and bytes found and copied so far and completes with the number of
+     * copied bytes.
+     *
+     * @param src the directory or file to copy
+     * @param dest the path to copy to
+     * @param options the options for the copy
+     * @return a task for the running copy
+     */
+    public static TreeCopyTask copyTree(Path src, Path dest,
+            CopyOptions options)
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        Objects.requireNonNull(options);
+        return TreeCopyTask.start(src, dest, options);
+    }
+
+    /**
+     * Copies the given source to all given sinks while reading the source only
+     * once. The calling thread reads the source and every sink is written by
+     * its own task on the dedicated executor of {@link JShed}. Each sink has a queue of
+     * up to {@code queueSize} chunks of 64 KB, so a slow sink doesn't stall the
+     * others until its queue is full. A failing sink doesn't stop the copy to
+     * the other sinks.
+     *
+     * @param src the source to read from
+     * @param sinks the sinks to write to
+     * @param queueSize the maximum number of chunks buffered per sink
+     * @return the results for the sinks in the order of the collection
+     * @throws IOException if the source can't be read
+     */
+    public static List<CopyResult> copyToAll(DataSource src,
+            Collection<? extends DataSink> sinks, int queueSize) throws IOException
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(sinks);
+        if (queueSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The queue size must be at least 1: " + queueSize);
+        }
+        return FanOutCopy.copy(src, new ArrayList<>(sinks), queueSize);
+    }
+
+    /**
+     * Copies the source to the sink in the background with separate tasks for
+     * reading and writing on the dedicated executor of {@link JShed}. The reader fills a
+     * ring of {@code depth} buffers while the writer writes the filled ones,
+     * so a slow source and a slow sink are busy at the same time instead of
+     * waiting for each other.
+     *
+     * @param src the source to read from
+     * @param dest the sink to write to
+     * @param depth the number of buffers in the ring
+     * @param bufferSize the size of each buffer
+     * @return a future for the running copy
+     */
+    public static CopyFuture copyPipelined(DataSource src, DataSink dest,
+            int depth, int bufferSize)
+    {
+        Objects.requireNonNull(src);
+        Objects.requireNonNull(dest);
+        if (depth < 2)
+        {
+            throw new IllegalArgumentException(
+                    "The depth must be at least 2: " + depth);
+        }
+        if (bufferSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The buffer size must be positive: " + bufferSize);
+        }
+        return PipelinedCopy.start(src, dest, depth, bufferSize);
+    }
+
+    /**
+     * Copies the given collection of sources to their sinks in the background.
+     * At most {@code maxConcurrency} copies run at the same time on the
+     * I/O executor of {@link JShed}. The progress of the returned task is the
+     * fraction of finished copies. A failing copy doesn't stop the others, its
+     * exception is available in the result for the copy. The task completes
+     * with the results once all copies are done. It fails with a
+     * {@link RejectedExecutionException} if the executor can't start a single
+     * copy.
+     *
+     * @param copies the pairs of source and sink to copy
+     * @param maxConcurrency the maximum number of concurrent copies
+     * @return a task providing the results in the order of the collection
+     */
+    public static BulkCopyTask copyAll(
+            Collection<? extends Map.Entry<? extends DataSource, ? extends DataSink>> copies,
+            int maxConcurrency)
+    {
+        Objects.requireNonNull(copies);
+        return BulkCopyTask.start(copies, maxConcurrency);
+    }
+
+    /**
+     * Copies the source to the sink like {@link #copy(DataSource, DataSink)}.
+     *
+     * @return the number of copied bytes
+     */
+    static long transfer(DataSource src, DataSink dest) throws IOException
     {
+        if (src instanceof ChannelSource && dest instanceof ChannelSink)
+        {
+            try (FileChannel in = ((ChannelSource) src).getSourceChannel();
+                    FileChannel out = ((ChannelSink) dest).getSinkChannel())
+            {
+                return transfer(in, out);
+            }
+        }
         try (InputStream in = src.getSource(); OutputStream out = dest.getSink())
         {
-            copy(in, out);
+            return transfer(in, out);
+        }
+    }
+
+    /**
+     * Copies the stream using a buffer from the {@link BufferPool}.
+     *
+     * @return the number of copied bytes
+     */
+    static long transfer(InputStream src, OutputStream dest) throws IOException
+    {
+        return transfer(src, dest, NO_OBSERVERS);
+    }
+
+    /**
+     * Copies the stream using a buffer from the {@link BufferPool} and passes
+     * every block to the given observers before it is written.
+     *
+     * @return the number of copied bytes
+     */
+    static long transfer(InputStream src, OutputStream dest,
+            CopyObserver[] observers) throws IOException
+    {
+        BufferPool pool = BufferPool.getDefault();
+        byte[] buffer = pool.acquire(BufferPool.sizeFor(src.available()));
+        try
+        {
+            long count = 0;
+            int read;
+            while ((read = src.read(buffer)) != -1)
+            {
+                for (CopyObserver observer : observers)
+                {
+                    observer.update(buffer, 0, read);
+                }
+                dest.write(buffer, 0, read);
+                count += read;
+            }
+            dest.flush();
+            return count;
+        } finally
+        {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Transfers the remaining data of the input channel to the output channel
+     * using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * which lets the operating system copy the data.
+     *
+     * @return the number of bytes transfered
+     */
+    static long transfer(FileChannel in, FileChannel out) throws IOException
+    {
+        long start = in.position();
+        long position = start;
+        long size = in.size();
+        while (position < size)
+        {
+            long transfered = in.transferTo(position, size - position, out);
+            if (transfered <= 0)
+            {
+                break;
+            }
+            position += transfered;
         }
+        return position - start;
     }
 
     public static IOObject toIOObject(File f)
@@ -128,19 +526,43 @@ public final class IOTools
     public static IOObject toIOObject(Path p)
     {
         Objects.requireNonNull(p);
-        return new IOObject()
-        {
-            @Override
-            public InputStream getSource() throws IOException
-            {
-                return Files.newInputStream(p);
-            }
+        return new PathIOObject(p);
+    }
 
-            @Override
-            public OutputStream getSink() throws IOException
+    /**
+     * Creates an {@link IOObject} for the given file that provides access to
+     * the data through memory mappings.
+     *
+     * @param p the file
+     * @return a new mapped object for the file
+     * @see MappedIOObject
+     */
+    public static MappedIOObject toMappedIOObject(Path p)
+    {
+        Objects.requireNonNull(p);
+        return new MappedIOObject(p);
+    }
+
+    /**
+     * Closes the given resource even if an earlier step failed. An exception
+     * while closing is added as suppressed to the earlier failure.
+     *
+     * @return the earlier failure or the exception from closing if there was
+     * no earlier failure
+     */
+    static Throwable close(Closeable resource, Throwable failure)
+    {
+        try
+        {
+            resource.close();
+        } catch (IOException ex)
+        {
+            if (failure == null)
             {
-                return Files.newOutputStream(p);
+                return ex;
             }
-        };
+            failure.addSuppressed(ex);
+        }
+        return failure;
     }
 }
@@ -0,0 +1,300 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * {@link IOObject} for a file that is accessed through memory mappings. The
+ * file is mapped read only in chunks of at most {@link #getChunkSize()} bytes
+ * so files larger than 2 GB can be mapped too. Readers can access the data at
+ * any position using {@link #slice(long, int)} without copying it from the
+ * page cache.
+ * <p>
+ * The file is mapped at the first access. Mappings can't be released
+ * explicitly, so once the file was mapped it is never changed in place.
+ * Sinks write to a temporary file next to it that atomically replaces the
+ * file when the sink is closed. Streams, chunks and slices obtained before
+ * keep the old content, the file is mapped again at the next access. So a
+ * source can still be read while a sink for the same object is written.
+ * Replacing the file doesn't keep its attributes. If the file wasn't mapped
+ * yet, the sinks write to it directly.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class MappedIOObject implements IOObject, ChannelSource,
+        ChannelSink, RandomAccessSink
+{
+
+    /**
+     * The default size of the mapped chunks.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+    /**
+     * Every chunk is mapped with this many bytes of the following chunk so
+     * that slices up to this size never need to be copied.
+     */
+    static final int OVERLAP = 1 << 20;
+
+    private final Path path;
+    private final int chunkSize;
+    private MappedByteBuffer[] chunks = null;
+    private long size = -1;
+    private boolean mapped = false;
+
+    public MappedIOObject(Path path)
+    {
+        this(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new object for the given file.
+     *
+     * @param path the file to map
+     * @param chunkSize the maximum size of a mapped chunk
+     */
+    public MappedIOObject(Path path, int chunkSize)
+    {
+        if (chunkSize < 1 || chunkSize > Integer.MAX_VALUE - OVERLAP)
+        {
+            throw new IllegalArgumentException("Invalid chunk size: "
+                    + chunkSize);
+        }
+        this.path = Objects.requireNonNull(path);
+        this.chunkSize = chunkSize;
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the size of the mapped file.
+     *
+     * @return the size in bytes
+     * @throws IOException if the file can't be mapped
+     */
+    public synchronized long size() throws IOException
+    {
+        map();
+        return size;
+    }
+
+    /**
+     * Returns the number of chunks the file is mapped in.
+     *
+     * @return the number of chunks
+     * @throws IOException if the file can't be mapped
+     */
+    public synchronized int getChunkCount() throws IOException
+    {
+        return map().length;
+    }
+
+    /**
+     * Returns a read only view of the chunk at the given index. The chunks
+     * together contain the whole file in order.
+     *
+     * @param index the index of the chunk
+     * @return a read only buffer for the chunk
+     * @throws IOException if the file can't be mapped
+     */
+    public ByteBuffer getChunk(int index) throws IOException
+    {
+        MappedByteBuffer[] mapped;
+        long fileSize;
+        synchronized (this)
+        {
+            mapped = map();
+            fileSize = size;
+        }
+        return chunkView(mapped[index], index, fileSize);
+    }
+
+    private ByteBuffer chunkView(MappedByteBuffer chunk, int index,
+            long fileSize)
+    {
+        long length = Math.min(chunkSize, fileSize - (long) index * chunkSize);
+        ByteBuffer view = chunk.asReadOnlyBuffer();
+        view.limit((int) length);
+        return view.slice();
+    }
+
+    /**
+     * Returns a read only view of the given range of the file. If the range
+     * spans two chunks and is bigger than one MB the data is copied into a new
+     * heap buffer, otherwise the returned buffer is backed by the mapping.
+     *
+     * @param position the position of the range in the file
+     * @param length the length of the range
+     * @return a read only buffer containing the range
+     * @throws IOException if the file can't be mapped
+     */
+    public ByteBuffer slice(long position, int length) throws IOException
+    {
+        MappedByteBuffer[] mapped;
+        long fileSize;
+        synchronized (this)
+        {
+            mapped = map();
+            fileSize = size;
+        }
+        if (position < 0 || length < 0 || position + length > fileSize)
+        {
+            throw new IndexOutOfBoundsException("Range " + position + "+"
+                    + length + " outside of file with size " + fileSize);
+        }
+        if (length == 0)
+        {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        int index = (int) (position / chunkSize);
+        int offset = (int) (position % chunkSize);
+        ByteBuffer view = mapped[index].asReadOnlyBuffer();
+        if (offset + length <= view.capacity())
+        {
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice();
+        }
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        while (copy.hasRemaining())
+        {
+            view.position(offset);
+            view.limit(Math.min(view.capacity(), Math.min(chunkSize,
+                    offset + copy.remaining())));
+            copy.put(view);
+            view = ++index < mapped.length ? mapped[index].asReadOnlyBuffer()
+                    : null;
+            offset = 0;
+        }
+        copy.flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    @Override
+    public InputStream getSource() throws IOException
+    {
+        MappedByteBuffer[] mapped;
+        long fileSize;
+        synchronized (this)
+        {
+            mapped = map();
+            fileSize = size;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[mapped.length];
+        for (int i = 0; i < mapped.length; i++)
+        {
+            buffers[i] = chunkView(mapped[i], i, fileSize);
+        }
+        return new ByteBufferInputStream(buffers);
+    }
+
+    @Override
+    public OutputStream getSink() throws IOException
+    {
+        return Channels.newOutputStream(getSinkChannel());
+    }
+
+    @Override
+    public FileChannel getSourceChannel() throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public FileChannel getSinkChannel() throws IOException
+    {
+        if (isMapped())
+        {
+            return ReplacingFileChannel.open(path, false, this::unmap);
+        }
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public FileChannel getRandomAccessChannel() throws IOException
+    {
+        if (isMapped())
+        {
+            return ReplacingFileChannel.open(path, true, this::unmap);
+        }
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private synchronized boolean isMapped()
+    {
+        return mapped;
+    }
+
+    private synchronized void unmap()
+    {
+        chunks = null;
+        size = -1;
+    }
+
+    private MappedByteBuffer[] map() throws IOException
+    {
+        if (chunks != null)
+        {
+            return chunks;
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+            int count = (int) ((fileSize + chunkSize - 1) / chunkSize);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++)
+            {
+                long start = (long) i * chunkSize;
+                long length = Math.min(fileSize - start,
+                        (long) chunkSize + OVERLAP);
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        length);
+            }
+            size = fileSize;
+            chunks = mapped;
+            this.mapped = true;
+            return mapped;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * Copies a file by splitting it into ranges that are copied concurrently using
+ * positional reads and writes on shared channels. The first exception of a
+ * range stops the other ranges and fails the returned {@link CopyFuture}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyParallel(java.nio.file.Path, java.nio.file.Path, int)
+ */
+final class ParallelFileCopy
+{
+
+    /**
+     * The minimum size of a range. Smaller files are copied with less ranges.
+     */
+    static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final FileChannel in;
+    private final FileChannel out;
+    private final CopyFuture future;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    private ParallelFileCopy(FileChannel in, FileChannel out, long size)
+    {
+        this.in = in;
+        this.out = out;
+        this.future = new CopyFuture(size);
+    }
+
+    static CopyFuture start(Path src, Path dest, int chunks) throws IOException
+    {
+        if (chunks < 1)
+        {
+            throw new IllegalArgumentException(
+                    "At least one chunk is required: " + chunks);
+        }
+        FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+        FileChannel out;
+        try
+        {
+            out = FileChannel.open(dest, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        } catch (IOException ex)
+        {
+            in.close();
+            throw ex;
+        }
+        try
+        {
+            return start(in, out, chunks);
+        } catch (IOException ex)
+        {
+            IOTools.close(out, IOTools.close(in, null));
+            throw ex;
+        }
+    }
+
+    /**
+     * Copies the content of the input channel to the output channel. Both
+     * channels are closed once the copy has finished.
+     */
+    static CopyFuture start(FileChannel in, FileChannel out, int chunks) throws IOException
+    {
+        long size = in.size();
+        int count = (int) Math.max(1, Math.min(chunks,
+                (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE));
+        ParallelFileCopy copy = new ParallelFileCopy(in, out, size);
+        copy.running.set(count);
+        long chunkSize = size / count;
+        for (int i = 0; i < count; i++)
+        {
+            long start = i * chunkSize;
+            long end = i == count - 1 ? size : start + chunkSize;
+            try
+            {
+                JShed.getIOExecutor().execute(() -> copy.copyRange(start, end));
+            } catch (RejectedExecutionException ex)
+            {
+                // The ranges that already run stop because of the error
+                copy.error.compareAndSet(null, ex);
+                for (int j = i; j < count; j++)
+                {
+                    copy.finishRange();
+                }
+                break;
+            }
+        }
+        return copy.future;
+    }
+
+    private void copyRange(long start, long end)
+    {
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = pool.acquireDirect(BufferPool.sizeFor(end - start));
+        try
+        {
+            long position = start;
+            while (position < end && error.get() == null
+                    && !future.isCancelled())
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = in.read(buffer, position);
+                if (read < 0)
+                {
+                    break;
+                }
+                buffer.flip();
+                long writePosition = position;
+                while (buffer.hasRemaining())
+                {
+                    writePosition += out.write(buffer, writePosition);
+                }
+                position += read;
+                future.advance(read);
+            }
+        } catch (IOException | RuntimeException ex)
+        {
+            error.compareAndSet(null, ex);
+        } finally
+        {
+            pool.releaseDirect(buffer);
+            finishRange();
+        }
+    }
+
+    /**
+     * Called when a range has stopped. The last range closes the channels and
+     * finishes the future.
+     */
+    private void finishRange()
+    {
+        if (running.decrementAndGet() != 0)
+        {
+            return;
+        }
+        Throwable failure = IOTools.close(out, IOTools.close(in, error.get()));
+        if (failure != null)
+        {
+            future.fail(failure);
+        } else
+        {
+            future.complete();
+        }
+    }
+}
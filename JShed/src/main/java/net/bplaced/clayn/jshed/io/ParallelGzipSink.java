@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * {@link DataSink} that compresses the written data using gzip. The data is
+ * split into blocks that are compressed independently and in parallel on the
+ * compute executor of {@link JShed}. Every block is written as its own gzip
+ * member so the result is a standard multi-member gzip file that can be read
+ * by any gzip implementation. {@link ParallelGzipSource} can read the members in parallel
+ * again.
+ * <p>
+ * Since the blocks are compressed independently the result is slightly bigger
+ * than a single member written by {@link java.util.zip.GZIPOutputStream}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ParallelGzipSink implements DataSink
+{
+
+    /**
+     * The default number of uncompressed bytes per member.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private final DataSink target;
+    private final int blockSize;
+    private final int level;
+
+    public ParallelGzipSink(DataSink target)
+    {
+        this(target, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new compressing sink.
+     *
+     * @param target the sink receiving the compressed data
+     * @param blockSize the number of uncompressed bytes per member
+     * @param level the compression level as used by {@link Deflater}
+     */
+    public ParallelGzipSink(DataSink target, int blockSize, int level)
+    {
+        if (blockSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The block size must be positive: " + blockSize);
+        }
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+        {
+            throw new IllegalArgumentException(
+                    "Invalid compression level: " + level);
+        }
+        this.target = Objects.requireNonNull(target);
+        this.blockSize = blockSize;
+        this.level = level;
+    }
+
+    @Override
+    public OutputStream getSink() throws IOException
+    {
+        return new CompressingStream(target.getSink());
+    }
+
+    static byte[] await(Future<byte[]> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private final class CompressingStream extends OutputStream
+    {
+
+        private final OutputStream out;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private final int maxPending = Runtime.getRuntime().availableProcessors() * 2;
+        private final BufferPool pool = BufferPool.getDefault();
+        private byte[] block;
+        private int count = 0;
+        private boolean written = false;
+        private boolean closed = false;
+
+        CompressingStream(OutputStream out)
+        {
+            this.out = out;
+            this.block = pool.acquire(blockSize);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            ensureOpen();
+            block[count++] = (byte) b;
+            if (count == blockSize)
+            {
+                submit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            Objects.requireNonNull(b);
+            if (off < 0 || len < 0 || len > b.length - off)
+            {
+                throw new IndexOutOfBoundsException();
+            }
+            ensureOpen();
+            while (len > 0)
+            {
+                int size = Math.min(len, blockSize - count);
+                System.arraycopy(b, off, block, count, size);
+                count += size;
+                off += size;
+                len -= size;
+                if (count == blockSize)
+                {
+                    submit();
+                }
+            }
+        }
+
+        /**
+         * Writes the data that was written so far as a member and waits until
+         * all members are written to the target.
+         */
+        @Override
+        public void flush() throws IOException
+        {
+            ensureOpen();
+            submit();
+            drain();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            try
+            {
+                submit();
+                if (!written && pending.isEmpty())
+                {
+                    out.write(GzipMembers.compress(block, 0, level));
+                }
+                drain();
+            } finally
+            {
+                closed = true;
+                for (Future<byte[]> future : pending)
+                {
+                    future.cancel(false);
+                }
+                pool.release(block);
+                out.close();
+            }
+        }
+
+        private void submit() throws IOException
+        {
+            if (count == 0)
+            {
+                return;
+            }
+            byte[] data = block;
+            int length = count;
+            pending.add(JShed.getComputeExecutor().submit(() ->
+            {
+                try
+                {
+                    return GzipMembers.compress(data, length, level);
+                } finally
+                {
+                    pool.release(data);
+                }
+            }));
+            block = pool.acquire(blockSize);
+            count = 0;
+            while (pending.size() >= maxPending)
+            {
+                writeNext();
+            }
+        }
+
+        private void drain() throws IOException
+        {
+            while (!pending.isEmpty())
+            {
+                writeNext();
+            }
+        }
+
+        private void writeNext() throws IOException
+        {
+            byte[] member = await(pending.peek());
+            pending.poll();
+            out.write(member);
+            written = true;
+        }
+
+        private void ensureOpen() throws IOException
+        {
+            if (closed)
+            {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+}
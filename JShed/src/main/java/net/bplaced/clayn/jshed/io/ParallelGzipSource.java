@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * {@link DataSource} that decompresses gzip data from another source. Members
+ * written by {@link ParallelGzipSink} are read ahead and inflated in parallel
+ * on the compute executor of {@link JShed}. Once a member is found that
+ * wasn't written by {@link ParallelGzipSink} the rest of the data is
+ * decompressed sequentially using a {@link GZIPInputStream}, so any gzip file
+ * can be read.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ParallelGzipSource implements DataSource
+{
+
+    private final DataSource source;
+    private final int readAhead;
+
+    public ParallelGzipSource(DataSource source)
+    {
+        this(source, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new decompressing source.
+     *
+     * @param source the source providing the compressed data
+     * @param readAhead the maximum number of members that are inflated ahead
+     * of the reader
+     */
+    public ParallelGzipSource(DataSource source, int readAhead)
+    {
+        if (readAhead < 1)
+        {
+            throw new IllegalArgumentException(
+                    "At least one member must be read ahead: " + readAhead);
+        }
+        this.source = Objects.requireNonNull(source);
+        this.readAhead = readAhead;
+    }
+
+    @Override
+    public InputStream getSource() throws IOException
+    {
+        return new DecompressingStream(source.getSource());
+    }
+
+    private final class DecompressingStream extends InputStream
+    {
+
+        private final PushbackInputStream in;
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private InputStream fallback = null;
+        private byte[] current = new byte[0];
+        private int position = 0;
+        private boolean end = false;
+        private boolean closed = false;
+        private final byte[] single = new byte[1];
+
+        DecompressingStream(InputStream in)
+        {
+            this.in = new PushbackInputStream(in, GzipMembers.HEADER_SIZE);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            Objects.requireNonNull(b);
+            if (off < 0 || len < 0 || len > b.length - off)
+            {
+                throw new IndexOutOfBoundsException();
+            }
+            if (closed)
+            {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (!fill())
+            {
+                return fallback == null ? -1 : fallback.read(b, off, len);
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return current.length - position;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            for (Future<byte[]> future : pending)
+            {
+                future.cancel(false);
+            }
+            pending.clear();
+            if (fallback != null)
+            {
+                fallback.close();
+            } else
+            {
+                in.close();
+            }
+        }
+
+        /**
+         * Makes sure that the current member has data left.
+         *
+         * @return {@code false} if there are no more members that are inflated
+         * in parallel
+         */
+        private boolean fill() throws IOException
+        {
+            while (position >= current.length)
+            {
+                readAhead();
+                Future<byte[]> next = pending.poll();
+                if (next == null)
+                {
+                    return false;
+                }
+                current = ParallelGzipSink.await(next);
+                position = 0;
+                readAhead();
+            }
+            return true;
+        }
+
+        private void readAhead() throws IOException
+        {
+            while (!end && fallback == null && pending.size() < readAhead)
+            {
+                byte[] member = GzipMembers.readMember(in);
+                if (member == null)
+                {
+                    fallback = new GZIPInputStream(in);
+                } else if (member.length == 0)
+                {
+                    end = true;
+                } else
+                {
+                    pending.add(JShed.getComputeExecutor().submit(
+                            () -> GzipMembers.decompress(member)));
+                }
+            }
+        }
+    }
+}
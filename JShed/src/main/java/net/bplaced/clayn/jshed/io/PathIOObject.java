@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * {@link IOObject} for a file on the filesystem. Besides the streams it
+ * provides file channels so that copies between two files don't have to pass
+ * through the heap.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#toIOObject(java.nio.file.Path)
+ */
+public final class PathIOObject implements IOObject, ChannelSource, ChannelSink,
+        RandomAccessSink
+{
+
+    private final Path path;
+
+    PathIOObject(Path path)
+    {
+        this.path = Objects.requireNonNull(path);
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    @Override
+    public InputStream getSource() throws IOException
+    {
+        return Files.newInputStream(path);
+    }
+
+    @Override
+    public OutputStream getSink() throws IOException
+    {
+        return Files.newOutputStream(path);
+    }
+
+    @Override
+    public FileChannel getSourceChannel() throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public FileChannel getSinkChannel() throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public FileChannel getRandomAccessChannel() throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+}
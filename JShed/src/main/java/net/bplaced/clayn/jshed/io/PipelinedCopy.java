@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * Copy where reading and writing run in separate tasks on the dedicated
+ * executor of {@link JShed}, so they never wait for a busy pool. The reader
+ * fills buffers from a fixed ring and hands them to the writer which gives
+ * them back after writing. This way the latency of the source and the sink
+ * overlap instead of adding up.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyPipelined(DataSource, DataSink, int, int)
+ */
+final class PipelinedCopy
+{
+
+    private final DataSource src;
+    private final DataSink dest;
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> filled;
+    private final Block[] ring;
+    private final CopyFuture future = new CopyFuture(-1);
+    private final AtomicInteger running = new AtomicInteger(2);
+    private volatile boolean failed = false;
+
+    private PipelinedCopy(DataSource src, DataSink dest, int depth,
+            int bufferSize)
+    {
+        this.src = src;
+        this.dest = dest;
+        this.free = new ArrayBlockingQueue<>(depth);
+        this.filled = new ArrayBlockingQueue<>(depth + 1);
+        this.ring = new Block[depth];
+        BufferPool pool = BufferPool.getDefault();
+        for (int i = 0; i < depth; i++)
+        {
+            ring[i] = new Block(pool.acquire(bufferSize), bufferSize);
+            free.add(ring[i]);
+        }
+    }
+
+    static CopyFuture start(DataSource src, DataSink dest, int depth,
+            int bufferSize)
+    {
+        PipelinedCopy copy = new PipelinedCopy(src, dest, depth, bufferSize);
+        try
+        {
+            JShed.getDedicatedExecutor().execute(copy::read);
+        } catch (RejectedExecutionException ex)
+        {
+            copy.fail(ex);
+            copy.finish();
+            copy.finish();
+            return copy.future;
+        }
+        try
+        {
+            JShed.getDedicatedExecutor().execute(copy::write);
+        } catch (RejectedExecutionException ex)
+        {
+            // Stops the reader that already runs
+            copy.fail(ex);
+            copy.finish();
+        }
+        return copy.future;
+    }
+
+    private void read()
+    {
+        try (InputStream in = src.getSource())
+        {
+            while (!failed && !future.isCancelled())
+            {
+                Block block = free.take();
+                if (failed)
+                {
+                    break;
+                }
+                block.length = in.read(block.data, 0, block.capacity);
+                if (block.length < 0)
+                {
+                    break;
+                }
+                filled.put(block);
+            }
+        } catch (IOException | RuntimeException ex)
+        {
+            fail(ex);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            fail(ex);
+        } finally
+        {
+            filled.offer(Block.END);
+            finish();
+        }
+    }
+
+    private void write()
+    {
+        try (OutputStream out = dest.getSink())
+        {
+            Block block;
+            while ((block = filled.take()) != Block.END)
+            {
+                if (!failed)
+                {
+                    out.write(block.data, 0, block.length);
+                    future.advance(block.length);
+                }
+                free.put(block);
+            }
+            out.flush();
+        } catch (IOException | RuntimeException ex)
+        {
+            fail(ex);
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            fail(ex);
+        } finally
+        {
+            finish();
+        }
+    }
+
+    /**
+     * Called by the reader and the writer when they stop. The last one gives
+     * the buffers back to the pool and completes the copy.
+     */
+    private void finish()
+    {
+        if (running.decrementAndGet() != 0)
+        {
+            return;
+        }
+        BufferPool pool = BufferPool.getDefault();
+        for (Block block : ring)
+        {
+            pool.release(block.data);
+        }
+        if (!failed)
+        {
+            future.complete();
+        }
+    }
+
+    private void fail(Throwable ex)
+    {
+        failed = true;
+        free.offer(Block.END);
+        future.fail(ex);
+    }
+
+    private static final class Block
+    {
+
+        static final Block END = new Block(new byte[0], 0);
+
+        final byte[] data;
+        final int capacity;
+        int length;
+
+        Block(byte[] data, int capacity)
+        {
+            this.data = data;
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link FileChannel} that writes to a temporary file next to the target and
+ * atomically replaces the target with it when the channel is closed. The
+ * target file is never modified in place, so existing memory mappings of it
+ * stay valid and keep the old content.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+final class ReplacingFileChannel extends FileChannel
+{
+
+    private final Path target;
+    private final Path temp;
+    private final FileChannel delegate;
+    private final Runnable onReplace;
+
+    private ReplacingFileChannel(Path target, Path temp, FileChannel delegate,
+            Runnable onReplace)
+    {
+        this.target = target;
+        this.temp = temp;
+        this.delegate = delegate;
+        this.onReplace = onReplace;
+    }
+
+    /**
+     * Opens a channel that replaces the given file when closed.
+     *
+     * @param target the file to replace
+     * @param keepContent whether the temporary file starts with the current
+     * content of the target instead of being empty
+     * @param onReplace called after the target was replaced
+     * @return the channel for writing the new content
+     * @throws IOException if the temporary file can't be created
+     */
+    static FileChannel open(Path target, boolean keepContent,
+            Runnable onReplace) throws IOException
+    {
+        Path absolute = target.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(),
+                absolute.getFileName().toString() + ".", ".tmp");
+        try
+        {
+            if (keepContent && Files.exists(absolute))
+            {
+                Files.copy(absolute, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return new ReplacingFileChannel(absolute, temp, FileChannel.open(
+                    temp, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                    onReplace);
+        } catch (IOException | RuntimeException ex)
+        {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException
+    {
+        return delegate.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+    {
+        return delegate.read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException
+    {
+        return delegate.write(src);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        return delegate.write(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException
+    {
+        return delegate.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException
+    {
+        delegate.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        return delegate.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException
+    {
+        delegate.truncate(size);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException
+    {
+        delegate.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException
+    {
+        return delegate.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException
+    {
+        return delegate.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException
+    {
+        return delegate.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException
+    {
+        return delegate.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+    {
+        return delegate.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException
+    {
+        return delegate.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException
+    {
+        return delegate.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException
+    {
+        try
+        {
+            delegate.close();
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            onReplace.run();
+        } finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
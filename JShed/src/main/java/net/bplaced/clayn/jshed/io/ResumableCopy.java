@@ -0,0 +1,285 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import net.bplaced.clayn.jshed.JShed;
+
+/**
+ * Copy of a file that records its progress in a checkpoint file so an
+ * interrupted copy can be continued later. A checkpoint is only written after
+ * the destination was forced to the storage, so the offset it contains was
+ * really written. The checkpoint also contains the size and modification time
+ * of the source and optionally a hash of the last block before the offset. A
+ * checkpoint is only used if all of them still match. The size and
+ * modification time are read once when the copy starts, the copy fails if
+ * they change while it runs.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyResumable(Path, Path, Path, boolean)
+ */
+final class ResumableCopy
+{
+
+    /**
+     * The number of bytes copied between two checkpoints.
+     */
+    static final long CHECKPOINT_INTERVAL = 16 * 1024 * 1024;
+
+    /**
+     * The number of bytes before the offset that are hashed for the
+     * verification.
+     */
+    static final int HASH_SIZE = 64 * 1024;
+
+    private static final int MAGIC = 0x4a534350;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path src;
+    private final Path dest;
+    private final Path checkpoint;
+    private final boolean verify;
+    private final BasicFileAttributes source;
+    private final long offset;
+    private final CopyFuture future;
+
+    private ResumableCopy(Path src, Path dest, Path checkpoint, boolean verify,
+            BasicFileAttributes source, long offset)
+    {
+        this.src = src;
+        this.dest = dest;
+        this.checkpoint = checkpoint;
+        this.verify = verify;
+        this.source = source;
+        this.offset = offset;
+        this.future = new CopyFuture(source.size() - offset);
+    }
+
+    static CopyFuture start(Path src, Path dest, Path checkpoint,
+            boolean verify) throws IOException
+    {
+        BasicFileAttributes source = Files.readAttributes(src,
+                BasicFileAttributes.class);
+        long offset = 0;
+        if (Files.exists(dest))
+        {
+            try (FileChannel out = FileChannel.open(dest, StandardOpenOption.READ))
+            {
+                offset = resumeOffset(checkpoint, source, out, verify);
+            }
+        }
+        ResumableCopy copy = new ResumableCopy(src, dest, checkpoint, verify,
+                source, offset);
+        try
+        {
+            JShed.getIOExecutor().execute(copy::run);
+        } catch (RejectedExecutionException ex)
+        {
+            copy.future.fail(ex);
+        }
+        return copy.future;
+    }
+
+    private void run()
+    {
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = pool.acquireDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(dest,
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE))
+        {
+            // Anything after the offset wasn't committed
+            out.truncate(offset);
+            long size = source.size();
+            long position = offset;
+            long committed = offset;
+            while (position < size && !future.isCancelled())
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), size - position));
+                int read = in.read(buffer, position);
+                if (read == -1)
+                {
+                    throw new IOException("The source changed during the copy: "
+                            + src);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    out.write(buffer, position + buffer.position());
+                }
+                position += read;
+                future.advance(read);
+                if (position - committed >= CHECKPOINT_INTERVAL)
+                {
+                    checkSource(in);
+                    out.force(false);
+                    storeCheckpoint(checkpoint, source, out, position, verify);
+                    committed = position;
+                }
+            }
+            checkSource(in);
+            out.force(false);
+            if (future.isCancelled())
+            {
+                storeCheckpoint(checkpoint, source, out, position, verify);
+            } else
+            {
+                Files.deleteIfExists(checkpoint);
+                future.complete();
+            }
+        } catch (IOException | RuntimeException ex)
+        {
+            future.fail(ex);
+        } finally
+        {
+            pool.releaseDirect(buffer);
+        }
+    }
+
+    /**
+     * Fails the copy if the source doesn't match the attributes read at the
+     * start anymore, a checkpoint for it would contain mixed data.
+     */
+    private void checkSource(FileChannel in) throws IOException
+    {
+        if (in.size() != source.size() || !Files.getLastModifiedTime(src)
+                .equals(source.lastModifiedTime()))
+        {
+            throw new IOException("The source changed during the copy: "
+                    + src);
+        }
+    }
+
+    /**
+     * Writes a checkpoint for the given offset. The checkpoint is written to a
+     * temporary file first and then moved over the old one, so there is
+     * always a complete checkpoint.
+     */
+    static void storeCheckpoint(Path checkpoint, BasicFileAttributes source,
+            FileChannel dest, long offset, boolean verify) throws IOException
+    {
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp))
+        {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeLong(source.size());
+            data.writeLong(source.lastModifiedTime().toMillis());
+            data.writeLong(offset);
+            data.writeBoolean(verify);
+            if (verify)
+            {
+                data.write(hashBefore(dest, offset));
+            }
+            data.flush();
+        }
+        try
+        {
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex)
+        {
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the offset to continue the copy from. If there is no checkpoint
+     * or it doesn't match the source or destination anymore the copy has to
+     * start from the beginning. If the destination should be verified but the
+     * checkpoint contains no hash the copy starts from the beginning too.
+     */
+    static long resumeOffset(Path checkpoint, BasicFileAttributes source,
+            FileChannel dest, boolean verify) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(checkpoint))
+        {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC
+                    || data.readLong() != source.size()
+                    || data.readLong() != source.lastModifiedTime().toMillis())
+            {
+                return 0;
+            }
+            long offset = data.readLong();
+            if (offset < 0 || offset > dest.size())
+            {
+                return 0;
+            }
+            boolean hashed = data.readBoolean();
+            if (verify && !hashed)
+            {
+                return 0;
+            }
+            if (verify)
+            {
+                byte[] hash = new byte[BlockSignature.STRONG_SIZE];
+                data.readFully(hash);
+                if (!Arrays.equals(hash, hashBefore(dest, offset)))
+                {
+                    return 0;
+                }
+            }
+            return offset;
+        } catch (IOException ex)
+        {
+            // A missing or broken checkpoint is no reason to fail the copy
+            return 0;
+        }
+    }
+
+    private static byte[] hashBefore(FileChannel channel, long offset) throws IOException
+    {
+        int length = (int) Math.min(HASH_SIZE, offset);
+        ByteBuffer block = ByteBuffer.allocate(length);
+        long start = offset - length;
+        while (block.hasRemaining())
+        {
+            if (channel.read(block, start + block.position()) == -1)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        MessageDigest md5 = BlockSignature.newDigest();
+        md5.update(block.array());
+        return md5.digest();
+    }
+}
@@ -0,0 +1,424 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link IOObject} that keeps its data in memory. The data is stored in a list
+ * of fixed size chunks taken from the {@link BufferPool}, so growing never
+ * copies the data that was already written. Every source reads the chunks
+ * directly, so the data can be read any number of times without copying it.
+ * <p>
+ * If the data grows beyond the spill threshold it is moved to a temporary
+ * file and all further data is written to that file. The file is deleted when
+ * the object is reset by {@link #getSink()} or closed.
+ * <p>
+ * Sources only read the data that was written when they were obtained.
+ * Opening the sink discards the current data, sources and buffers that were
+ * obtained before keep the old data. The chunks they view are never returned
+ * to the pool, only chunks that were never shared are reused. A spilled source
+ * keeps its temporary file open, so on systems that can't delete open files
+ * resetting the object fails until the source was closed.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class SegmentedIOObject implements IOObject, Closeable
+{
+
+    /**
+     * The default size of the chunks.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final boolean direct;
+    private final long spillThreshold;
+    private final BufferPool pool = BufferPool.getDefault();
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+    private Path spillFile = null;
+    private OutputStream spillStream = null;
+    private int generation = 0;
+    private int shared = 0;
+
+    /**
+     * Creates a new object with heap chunks of the default size that never
+     * spills to a file.
+     */
+    public SegmentedIOObject()
+    {
+        this(DEFAULT_CHUNK_SIZE, false, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new object.
+     *
+     * @param chunkSize the minimum size of the chunks
+     * @param direct {@code true} to use direct buffers for the chunks
+     * @param spillThreshold the number of bytes after which the data is moved
+     * to a temporary file
+     */
+    public SegmentedIOObject(int chunkSize, boolean direct, long spillThreshold)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The chunk size must be positive: " + chunkSize);
+        }
+        if (spillThreshold < 0)
+        {
+            throw new IllegalArgumentException(
+                    "The threshold must not be negative: " + spillThreshold);
+        }
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Returns the number of bytes written to this object.
+     *
+     * @return the size of the data
+     */
+    public synchronized long size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether the data was moved to a temporary file.
+     *
+     * @return {@code true} if the data is stored in a file
+     */
+    public synchronized boolean isSpilled()
+    {
+        return spillFile != null;
+    }
+
+    /**
+     * Returns read only views of the chunks containing the data.
+     *
+     * @return the chunks in order
+     * @throws IllegalStateException if the data was moved to a file
+     */
+    public synchronized ByteBuffer[] getBuffers()
+    {
+        if (spillFile != null)
+        {
+            throw new IllegalStateException("The data was moved to a file");
+        }
+        shared = chunks.size();
+        ByteBuffer[] buffers = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            ByteBuffer view = chunks.get(i).asReadOnlyBuffer();
+            view.flip();
+            buffers[i] = view;
+        }
+        return buffers;
+    }
+
+    @Override
+    public synchronized InputStream getSource() throws IOException
+    {
+        if (spillFile != null)
+        {
+            if (spillStream != null)
+            {
+                spillStream.flush();
+            }
+            return new LimitedInputStream(Files.newInputStream(spillFile),
+                    size);
+        }
+        return new ByteBufferInputStream(getBuffers());
+    }
+
+    /**
+     * Discards the current data and returns a stream that writes the new
+     * data.
+     */
+    @Override
+    public synchronized OutputStream getSink() throws IOException
+    {
+        reset();
+        return new SegmentStream();
+    }
+
+    /**
+     * Releases the chunks and deletes the temporary file if one was created.
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        reset();
+    }
+
+    private void reset() throws IOException
+    {
+        generation++;
+        releaseChunks();
+        size = 0;
+        try
+        {
+            if (spillStream != null)
+            {
+                spillStream.close();
+            }
+        } finally
+        {
+            spillStream = null;
+            if (spillFile != null)
+            {
+                Files.deleteIfExists(spillFile);
+                spillFile = null;
+            }
+        }
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException
+    {
+        if (spillFile == null && size + len > spillThreshold)
+        {
+            spill();
+        }
+        if (spillStream != null)
+        {
+            spillStream.write(b, off, len);
+            size += len;
+            return;
+        }
+        while (len > 0)
+        {
+            ByteBuffer chunk = chunks.isEmpty() ? null
+                    : chunks.get(chunks.size() - 1);
+            if (chunk == null || !chunk.hasRemaining())
+            {
+                chunk = acquire();
+                chunks.add(chunk);
+            }
+            int count = Math.min(len, chunk.remaining());
+            chunk.put(b, off, count);
+            off += count;
+            len -= count;
+            size += count;
+        }
+    }
+
+    private void spill() throws IOException
+    {
+        spillFile = Files.createTempFile("jshed", ".spill");
+        spillStream = Files.newOutputStream(spillFile);
+        for (ByteBuffer chunk : chunks)
+        {
+            chunk.flip();
+            if (chunk.hasArray())
+            {
+                spillStream.write(chunk.array(), chunk.arrayOffset(),
+                        chunk.limit());
+            } else
+            {
+                byte[] data = new byte[chunk.remaining()];
+                chunk.get(data);
+                spillStream.write(data);
+            }
+        }
+        releaseChunks();
+    }
+
+    /**
+     * Returns the chunks that were never viewed by a source to the pool and
+     * removes all chunks.
+     */
+    private void releaseChunks()
+    {
+        for (int i = shared; i < chunks.size(); i++)
+        {
+            release(chunks.get(i));
+        }
+        chunks.clear();
+        shared = 0;
+    }
+
+    private ByteBuffer acquire()
+    {
+        if (direct)
+        {
+            ByteBuffer chunk = pool.acquireDirect(chunkSize);
+            chunk.limit(chunk.capacity());
+            return chunk;
+        }
+        return ByteBuffer.wrap(pool.acquire(chunkSize));
+    }
+
+    private void release(ByteBuffer chunk)
+    {
+        if (chunk.isDirect())
+        {
+            pool.releaseDirect(chunk);
+        } else
+        {
+            pool.release(chunk.array());
+        }
+    }
+
+    /**
+     * Reads at most the given number of bytes, so sources of a spilled object
+     * don't see data written after they were created.
+     */
+    private static final class LimitedInputStream extends FilterInputStream
+    {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit)
+        {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0)
+            {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, remaining));
+            if (count > 0)
+            {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    private final class SegmentStream extends OutputStream
+    {
+
+        private final byte[] single = new byte[1];
+        private final int streamGeneration = generation;
+        private boolean closed = false;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            Objects.requireNonNull(b);
+            if (off < 0 || len < 0 || len > b.length - off)
+            {
+                throw new IndexOutOfBoundsException();
+            }
+            synchronized (SegmentedIOObject.this)
+            {
+                if (closed || streamGeneration != generation)
+                {
+                    throw new IOException("Stream closed");
+                }
+                SegmentedIOObject.this.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            synchronized (SegmentedIOObject.this)
+            {
+                if (spillStream != null && streamGeneration == generation)
+                {
+                    spillStream.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            synchronized (SegmentedIOObject.this)
+            {
+                if (closed)
+                {
+                    return;
+                }
+                closed = true;
+                flush();
+            }
+        }
+    }
+}
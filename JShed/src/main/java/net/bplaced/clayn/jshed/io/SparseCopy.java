@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copy between file channels that skips blocks containing only zeros. The
+ * skipped blocks are never written, so file systems that support sparse files
+ * leave holes in the destination instead of allocating space for them.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copySparse(ChannelSource, ChannelSink)
+ */
+final class SparseCopy
+{
+
+    /**
+     * The granularity in which zeros are detected. This matches the block
+     * size of most file systems, smaller runs of zeros can't become holes
+     * anyway.
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int BUFFER_SIZE = 256 * BLOCK_SIZE;
+
+    private SparseCopy()
+    {
+    }
+
+    /**
+     * Copies the remaining data of the input channel to the start of the
+     * output channel.
+     *
+     * @return the number of bytes that were actually written
+     */
+    static long copy(FileChannel in, FileChannel out) throws IOException
+    {
+        BufferPool pool = BufferPool.getDefault();
+        ByteBuffer buffer = pool.acquireDirect(BUFFER_SIZE);
+        try
+        {
+            long written = 0;
+            long position = 0;
+            while (fill(in, buffer) > 0)
+            {
+                buffer.flip();
+                written += writeData(buffer, out, position);
+                position += buffer.limit();
+                buffer.clear();
+            }
+            if (out.size() < position)
+            {
+                // The data ended with a hole, writing the last byte gives the
+                // file its full size without allocating the rest
+                out.write(ByteBuffer.allocate(1), position - 1);
+                written++;
+            }
+            return written;
+        } finally
+        {
+            pool.releaseDirect(buffer);
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end is reached.
+     * Full buffers keep the blocks aligned to the positions in the file.
+     */
+    private static int fill(FileChannel in, ByteBuffer buffer) throws IOException
+    {
+        int total = 0;
+        while (buffer.hasRemaining())
+        {
+            int read = in.read(buffer);
+            if (read == -1)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Writes every run of blocks in the buffer that contain data at the
+     * matching position of the output and skips the others.
+     */
+    private static long writeData(ByteBuffer buffer, FileChannel out,
+            long position) throws IOException
+    {
+        long written = 0;
+        int limit = buffer.limit();
+        int runStart = -1;
+        for (int offset = 0; offset < limit; offset += BLOCK_SIZE)
+        {
+            int end = Math.min(offset + BLOCK_SIZE, limit);
+            if (isZero(buffer, offset, end))
+            {
+                if (runStart >= 0)
+                {
+                    written += write(buffer, runStart, offset, out, position);
+                    runStart = -1;
+                }
+            } else if (runStart < 0)
+            {
+                runStart = offset;
+            }
+        }
+        if (runStart >= 0)
+        {
+            written += write(buffer, runStart, limit, out, position);
+        }
+        return written;
+    }
+
+    private static int write(ByteBuffer buffer, int from, int to,
+            FileChannel out, long position) throws IOException
+    {
+        ByteBuffer run = buffer.duplicate();
+        run.limit(to).position(from);
+        while (run.hasRemaining())
+        {
+            out.write(run, position + run.position());
+        }
+        return to - from;
+    }
+
+    static boolean isZero(ByteBuffer buffer, int from, int to)
+    {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES)
+        {
+            if (buffer.getLong(i) != 0)
+            {
+                return false;
+            }
+        }
+        for (; i < to; i++)
+        {
+            if (buffer.get(i) != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import net.bplaced.clayn.jshed.util.ProgressingFuture;
+
+/**
+ * Task for copying a directory tree. The tree is traversed by fork join tasks
+ * so idle threads steal the directories and files of busy ones. Every
+ * directory is created before the tasks for its content are forked. Files are
+ * copied using {@link IOTools#copy(DataSource, DataSink)} so they are
+ * transfered between file channels.
+ * <p>
+ * The total number of files and bytes grows while the tree is traversed, so
+ * the progress is only an estimate until the traversal is complete.
+ * <p>
+ * The fork join tasks never complete exceptionally, they record the first
+ * error and skip the remaining work instead. So every directory waits for all
+ * of its children and the task is only done after all copies have finished.
+ * It then completes with the number of copied bytes or fails with the
+ * recorded error. Entries that are neither regular files, directories nor
+ * symbolic links can't be copied and fail the task. Cancelling the task skips
+ * the files and directories that weren't started yet.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @see IOTools#copyTree(java.nio.file.Path, java.nio.file.Path, CopyOptions)
+ */
+public final class TreeCopyTask extends ProgressingFuture<Long>
+{
+
+    private final CopyOptions options;
+    private final LongAdder totalFiles = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder copiedFiles = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+    private final AtomicReference<Exception> error = new AtomicReference<>();
+
+    private TreeCopyTask(CopyOptions options)
+    {
+        this.options = options;
+        setProgressCoalescing(IOTools.PROGRESS_DELTA, 0, TimeUnit.MILLISECONDS);
+    }
+
+    static TreeCopyTask start(Path src, Path dest, CopyOptions options)
+    {
+        TreeCopyTask task = new TreeCopyTask(options);
+        ForkJoinPool pool = new ForkJoinPool(options.getParallelism());
+        pool.execute(new RecursiveAction()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute()
+            {
+                try
+                {
+                    BasicFileAttributes attributes = Files.readAttributes(src,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    task.copy(src, dest, attributes);
+                } catch (IOException | RuntimeException ex)
+                {
+                    task.record(ex);
+                } finally
+                {
+                    pool.shutdown();
+                    task.finish();
+                }
+            }
+        });
+        return task;
+    }
+
+    private void copy(Path src, Path dest, BasicFileAttributes attributes) throws IOException
+    {
+        if (attributes.isDirectory())
+        {
+            new DirectoryCopy(src, dest, attributes).compute();
+        } else
+        {
+            totalFiles.increment();
+            totalBytes.add(attributes.size());
+            new FileCopy(src, dest, attributes).compute();
+        }
+    }
+
+    private void record(Exception ex)
+    {
+        error.compareAndSet(null, ex instanceof UncheckedIOException
+                ? ((UncheckedIOException) ex).getCause() : ex);
+    }
+
+    private void finish()
+    {
+        Exception failure = error.get();
+        if (failure != null)
+        {
+            fail(failure);
+        } else
+        {
+            complete(copiedBytes.sum());
+        }
+    }
+
+    /**
+     * Checks whether the remaining work should be skipped because of an error
+     * or a cancellation.
+     */
+    private boolean isStopped()
+    {
+        return error.get() != null || isCancelled();
+    }
+
+    public long getTotalFiles()
+    {
+        return totalFiles.sum();
+    }
+
+    public long getTotalBytes()
+    {
+        return totalBytes.sum();
+    }
+
+    public long getCopiedFiles()
+    {
+        return copiedFiles.sum();
+    }
+
+    public long getCopiedBytes()
+    {
+        return copiedBytes.sum();
+    }
+
+    @Override
+    public double getProgress()
+    {
+        if (isDone())
+        {
+            return getState() == State.COMPLETED ? 1 : -1;
+        }
+        long bytes = totalBytes.sum();
+        double progress = bytes > 0 ? (copiedBytes.sum() * 1.0) / (bytes * 1.0)
+                : 0;
+        return Math.min(progress, 1 - IOTools.PROGRESS_DELTA);
+    }
+
+    private final class DirectoryCopy extends RecursiveAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path src;
+        private final Path dest;
+        private final BasicFileAttributes attributes;
+
+        DirectoryCopy(Path src, Path dest, BasicFileAttributes attributes)
+        {
+            this.src = src;
+            this.dest = dest;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (isStopped())
+            {
+                return;
+            }
+            try
+            {
+                Files.createDirectories(dest);
+                List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(
+                        src))
+                {
+                    for (Path child : children)
+                    {
+                        BasicFileAttributes childAttributes = Files.readAttributes(
+                                child, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        Path target = dest.resolve(child.getFileName().toString());
+                        if (childAttributes.isDirectory())
+                        {
+                            tasks.add(new DirectoryCopy(child, target,
+                                    childAttributes));
+                        } else
+                        {
+                            totalFiles.increment();
+                            totalBytes.add(childAttributes.size());
+                            tasks.add(new FileCopy(child, target,
+                                    childAttributes));
+                        }
+                    }
+                }
+                invokeAll(tasks);
+                if (options.isCopyAttributes())
+                {
+                    Files.setLastModifiedTime(dest,
+                            attributes.lastModifiedTime());
+                }
+            } catch (IOException | RuntimeException ex)
+            {
+                record(ex);
+            }
+        }
+    }
+
+    private final class FileCopy extends RecursiveAction implements
+            ForkJoinPool.ManagedBlocker
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path src;
+        private final Path dest;
+        private final BasicFileAttributes attributes;
+        private boolean copied = false;
+        private boolean finished = false;
+
+        FileCopy(Path src, Path dest, BasicFileAttributes attributes)
+        {
+            this.src = src;
+            this.dest = dest;
+            this.attributes = attributes;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (isStopped())
+            {
+                return;
+            }
+            try
+            {
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                record(ex);
+            }
+            if (!copied)
+            {
+                return;
+            }
+            copiedFiles.increment();
+            copiedBytes.add(attributes.size());
+            reportWork(attributes.size());
+            fireProgressChanged(getProgress());
+        }
+
+        @Override
+        public boolean block()
+        {
+            try
+            {
+                if (!options.isOverwrite() && Files.exists(dest,
+                        LinkOption.NOFOLLOW_LINKS))
+                {
+                    throw new FileAlreadyExistsException(dest.toString());
+                }
+                if (attributes.isRegularFile())
+                {
+                    IOTools.copy(IOTools.toIOObject(src), IOTools.toIOObject(
+                            dest));
+                } else if (attributes.isSymbolicLink())
+                {
+                    Files.deleteIfExists(dest);
+                    Files.copy(src, dest, LinkOption.NOFOLLOW_LINKS);
+                } else
+                {
+                    throw new IOException("Unsupported file type: " + src);
+                }
+                if (options.isCopyAttributes() && !attributes.isSymbolicLink())
+                {
+                    Files.setLastModifiedTime(dest,
+                            attributes.lastModifiedTime());
+                }
+                copied = true;
+            } catch (IOException | RuntimeException ex)
+            {
+                record(ex);
+            }
+            finished = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable()
+        {
+            return finished;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of a task that consists of many subtasks. The subtasks are added
+ * as {@link Work} with a weight and report the work they have done. Groups of
+ * subtasks can be added with {@link #addGroup()}, they are composite progresses
+ * themselves whose weight is the sum of the weights of their subtasks.
+ * Subtasks and groups can be added at any time, which lowers the progress of
+ * their ancestors accordingly.
+ * <p>
+ * Every report of a subtask is converted to a fixed point value and added to
+ * striped counters of all its ancestors. Reading the progress of a composite
+ * therefore doesn't depend on the number of subtasks and reports from many
+ * threads don't contend on a single counter. The conversion telescopes, so a
+ * finished subtask always contributes exactly its weight.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class CompositeProgress extends ProgressingTask
+{
+
+    /**
+     * The fixed point value of a finished subtask with the weight 1.
+     */
+    static final long ONE = 1L << 20;
+
+    private final CompositeProgress parent;
+    private final LongAdder completed = new LongAdder();
+    private final AtomicLong weight = new AtomicLong(0);
+
+    public CompositeProgress()
+    {
+        this(null);
+    }
+
+    private CompositeProgress(CompositeProgress parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Adds a new group of subtasks to this progress.
+     *
+     * @return the new group
+     */
+    public CompositeProgress addGroup()
+    {
+        return new CompositeProgress(this);
+    }
+
+    /**
+     * Adds a new subtask to this progress.
+     *
+     * @param weight the weight of the subtask compared to the other ones
+     * @param total the number of work units of the subtask
+     * @return the new subtask
+     */
+    public Work addWork(long weight, long total)
+    {
+        if (weight < 1 || total < 1)
+        {
+            throw new IllegalArgumentException(
+                    "The weight and total work must be positive");
+        }
+        if (weight > Long.MAX_VALUE / ONE)
+        {
+            throw new IllegalArgumentException("The weight is too big: " + weight);
+        }
+        for (CompositeProgress node = this; node != null; node = node.parent)
+        {
+            node.weight.addAndGet(weight);
+        }
+        Work work = new Work(this, weight, total);
+        notifyAncestors();
+        return work;
+    }
+
+    /**
+     * Returns the sum of the weights of all subtasks in this progress.
+     *
+     * @return the total weight
+     */
+    public long getWeight()
+    {
+        return weight.get();
+    }
+
+    /**
+     * Returns the progress as the weighted fraction of the work done by all
+     * subtasks.
+     *
+     * @return the progress or {@code 0} if there are no subtasks
+     */
+    @Override
+    public double getProgress()
+    {
+        // Weights are added before their work is reported, so reading the
+        // completed work first never sees work without its weight
+        long done = completed.sum();
+        long total = weight.get();
+        if (total == 0)
+        {
+            return 0;
+        }
+        return Math.min(1.0, done / (total * (double) ONE));
+    }
+
+    private void add(long value)
+    {
+        for (CompositeProgress node = this; node != null; node = node.parent)
+        {
+            node.completed.add(value);
+        }
+        notifyAncestors();
+    }
+
+    private void notifyAncestors()
+    {
+        for (CompositeProgress node = this; node != null; node = node.parent)
+        {
+            if (node.getOnProgress() != null
+                    || node.getOnProgressChanged() != null)
+            {
+                node.fireProgressChanged(node.getProgress());
+            }
+        }
+    }
+
+    /**
+     * A subtask of a {@link CompositeProgress} that reports its work in
+     * units.
+     */
+    public static final class Work extends ProgressingTask
+    {
+
+        private final CompositeProgress parent;
+        private final long weight;
+        private final long total;
+        private final AtomicLong done = new AtomicLong(0);
+
+        private Work(CompositeProgress parent, long weight, long total)
+        {
+            this.parent = parent;
+            this.weight = weight;
+            this.total = total;
+        }
+
+        /**
+         * Reports that the given number of work units were done. Work beyond
+         * the total is ignored.
+         *
+         * @param units the number of work units done since the last report
+         */
+        public void report(long units)
+        {
+            if (units < 0)
+            {
+                throw new IllegalArgumentException(
+                        "The work units must not be negative: " + units);
+            }
+            long before = done.getAndAdd(units);
+            advance(before, before + units);
+        }
+
+        /**
+         * Reports the remaining work units of this subtask as done.
+         */
+        public void complete()
+        {
+            long before = done.getAndUpdate(value -> Math.max(value, total));
+            advance(before, total);
+        }
+
+        public long getWeight()
+        {
+            return weight;
+        }
+
+        public long getTotal()
+        {
+            return total;
+        }
+
+        public long getDone()
+        {
+            return Math.min(done.get(), total);
+        }
+
+        @Override
+        public double getProgress()
+        {
+            return getDone() / (total * 1.0);
+        }
+
+        private void advance(long before, long after)
+        {
+            long delta = scaled(after) - scaled(before);
+            if (delta > 0)
+            {
+                parent.add(delta);
+            }
+            fireProgressChanged(getProgress());
+        }
+
+        /**
+         * Converts the done work units to the fixed point value. As the
+         * contributions are differences of this function, their sum only
+         * depends on the last value.
+         */
+        private long scaled(long units)
+        {
+            if (units >= total || units < 0)
+            {
+                return weight * ONE;
+            }
+            return (long) (units / (double) total * (weight * ONE));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics of an {@link InstrumentedExecutorService}. The counters are updated
+ * by the executor and can be read at any time, either directly or through JMX
+ * after registering the metrics with a {@link MetricsRegistry}. All times are
+ * in nanoseconds.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class ExecutorMetrics implements ExecutorMetricsMXBean
+{
+
+    final LongAdder submitted = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder queued = new LongAdder();
+    final LongAdder active = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final IntSupplier poolSize;
+
+    ExecutorMetrics(IntSupplier poolSize)
+    {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Returns the number of tasks that were handed to the executor.
+     *
+     * @return the number of submitted tasks
+     */
+    @Override
+    public long getSubmittedCount()
+    {
+        return submitted.sum();
+    }
+
+    /**
+     * Returns the number of tasks that finished, including the failed ones.
+     *
+     * @return the number of finished tasks
+     */
+    @Override
+    public long getCompletedCount()
+    {
+        return completed.sum();
+    }
+
+    /**
+     * Returns the number of tasks that finished with an exception.
+     *
+     * @return the number of failed tasks
+     */
+    @Override
+    public long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the number of tasks the executor didn't accept.
+     *
+     * @return the number of rejected tasks
+     */
+    @Override
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of tasks that were submitted but haven't started
+     * yet.
+     *
+     * @return the number of waiting tasks
+     */
+    @Override
+    public long getQueuedCount()
+    {
+        return queued.sum();
+    }
+
+    /**
+     * Returns the number of tasks that are running right now.
+     *
+     * @return the number of running tasks
+     */
+    @Override
+    public long getActiveCount()
+    {
+        return active.sum();
+    }
+
+    /**
+     * Returns the number of threads of the executor.
+     *
+     * @return the number of threads or {@code -1} if the executor doesn't
+     * provide it
+     */
+    @Override
+    public int getPoolSize()
+    {
+        return poolSize.getAsInt();
+    }
+
+    /**
+     * Returns the histogram for the time between the submission and the start
+     * of the tasks.
+     *
+     * @return the histogram of the wait times
+     */
+    public LatencyHistogram getWaitTime()
+    {
+        return waitTime;
+    }
+
+    /**
+     * Returns the histogram for the time the tasks ran.
+     *
+     * @return the histogram of the run times
+     */
+    public LatencyHistogram getRunTime()
+    {
+        return runTime;
+    }
+
+    @Override
+    public double getMeanWaitTime()
+    {
+        return waitTime.getMean();
+    }
+
+    @Override
+    public long getMaxWaitTime()
+    {
+        return waitTime.getMax();
+    }
+
+    @Override
+    public long getWaitTime99thPercentile()
+    {
+        return waitTime.getPercentile(99);
+    }
+
+    @Override
+    public double getMeanRunTime()
+    {
+        return runTime.getMean();
+    }
+
+    @Override
+    public long getMaxRunTime()
+    {
+        return runTime.getMax();
+    }
+
+    @Override
+    public long getRunTime99thPercentile()
+    {
+        return runTime.getPercentile(99);
+    }
+}
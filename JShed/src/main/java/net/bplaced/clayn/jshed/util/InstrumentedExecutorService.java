@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExecutorService} that runs its tasks on another executor and records
+ * {@link ExecutorMetrics} for them. For every task the time it waited before
+ * running and the time it ran are measured. Tasks submitted through
+ * {@link #submit(Callable)} and the other methods returning futures are
+ * counted as failed if they complete exceptionally.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class InstrumentedExecutorService extends AbstractExecutorService
+{
+
+    private final ExecutorService delegate;
+    private final ExecutorMetrics metrics;
+
+    /**
+     * Creates a new executor running its tasks on the given one.
+     *
+     * @param delegate the executor to run the tasks on
+     */
+    public InstrumentedExecutorService(ExecutorService delegate)
+    {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.metrics = new ExecutorMetrics(() -> delegate instanceof ThreadPoolExecutor
+                ? ((ThreadPoolExecutor) delegate).getPoolSize() : -1);
+    }
+
+    public ExecutorMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Returns the executor the tasks are running on.
+     *
+     * @return the wrapped executor
+     */
+    public ExecutorService getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        Objects.requireNonNull(command);
+        long submitted = System.nanoTime();
+        metrics.submitted.increment();
+        metrics.queued.increment();
+        try
+        {
+            delegate.execute(() -> run(command, submitted));
+        } catch (RejectedExecutionException ex)
+        {
+            metrics.queued.decrement();
+            metrics.rejected.increment();
+            throw ex;
+        }
+    }
+
+    private void run(Runnable command, long submitted)
+    {
+        long start = System.nanoTime();
+        metrics.queued.decrement();
+        metrics.active.increment();
+        metrics.getWaitTime().record(start - submitted);
+        try
+        {
+            command.run();
+        } catch (RuntimeException | Error ex)
+        {
+            metrics.failed.increment();
+            throw ex;
+        } finally
+        {
+            metrics.getRunTime().record(System.nanoTime() - start);
+            metrics.active.decrement();
+            metrics.completed.increment();
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value)
+    {
+        return new CountingTask<>(Executors.callable(runnable, value));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable)
+    {
+        return new CountingTask<>(callable);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Future that counts its task as failed when it completes exceptionally,
+     * since the exception never reaches the executor.
+     */
+    private final class CountingTask<T> extends FutureTask<T>
+    {
+
+        private CountingTask(Callable<T> callable)
+        {
+            super(callable);
+        }
+
+        @Override
+        protected void setException(Throwable t)
+        {
+            metrics.failed.increment();
+            super.setException(t);
+        }
+    }
+}
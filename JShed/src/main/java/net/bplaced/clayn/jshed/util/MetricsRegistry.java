@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry for {@link ExecutorMetrics} by name. Registered metrics can be
+ * read through {@link #get(String)} and are also available as MXBeans of the
+ * platform MBean server with the name
+ * {@code net.bplaced.clayn.jshed:type=ExecutorMetrics,name=<name>}.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public final class MetricsRegistry
+{
+
+    /**
+     * The domain of the registered MXBeans.
+     */
+    public static final String DOMAIN = "net.bplaced.clayn.jshed";
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry(
+            ManagementFactory.getPlatformMBeanServer());
+
+    private final Map<String, ExecutorMetrics> metrics = new ConcurrentHashMap<>();
+    private final MBeanServer server;
+
+    MetricsRegistry(MBeanServer server)
+    {
+        this.server = server;
+    }
+
+    /**
+     * Returns the registry that registers the metrics with the platform
+     * MBean server.
+     *
+     * @return the default registry
+     */
+    public static MetricsRegistry getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers the given metrics. Metrics that were registered with the same
+     * name before are replaced.
+     *
+     * @param name the name of the metrics
+     * @param executorMetrics the metrics to register
+     */
+    public synchronized void register(String name, ExecutorMetrics executorMetrics)
+    {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(executorMetrics);
+        unregister(name);
+        try
+        {
+            server.registerMBean(executorMetrics, objectName(name));
+        } catch (JMException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+        metrics.put(name, executorMetrics);
+    }
+
+    /**
+     * Removes the metrics with the given name.
+     *
+     * @param name the name of the metrics
+     */
+    public synchronized void unregister(String name)
+    {
+        Objects.requireNonNull(name);
+        if (metrics.remove(name) == null)
+        {
+            return;
+        }
+        try
+        {
+            server.unregisterMBean(objectName(name));
+        } catch (InstanceNotFoundException ex)
+        {
+            // Already removed through the server
+        } catch (JMException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the metrics with the given name.
+     *
+     * @param name the name of the metrics
+     * @return the metrics or {@code null} if none are registered
+     */
+    public ExecutorMetrics get(String name)
+    {
+        return metrics.get(name);
+    }
+
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet(metrics.keySet());
+    }
+
+    /**
+     * Returns the name the metrics are registered with in the MBean server.
+     *
+     * @param name the name of the metrics
+     * @return the name of the MXBean
+     */
+    public static ObjectName objectName(String name)
+    {
+        try
+        {
+            return new ObjectName(DOMAIN + ":type=ExecutorMetrics,name="
+                    + ObjectName.quote(name));
+        } catch (JMException ex)
+        {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
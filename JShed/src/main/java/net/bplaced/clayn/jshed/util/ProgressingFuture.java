@@ -0,0 +1,449 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link ProgressingTask} that is also a {@link Future} and a
+ * {@link CompletionStage} for its result. Instead of polling
+ * {@link #isDone()} callers can wait for the result, react to failures and
+ * compose further stages. Cancelling is cooperative: {@link #cancel(boolean)}
+ * only marks the task as cancelled and the running work is expected to check
+ * {@link #isCancelled()} regularly and stop.
+ * <p>
+ * Once the task is finished the listeners for the progress receive a last
+ * update with the final progress.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ * @param <T> the type of the result
+ */
+public abstract class ProgressingFuture<T> extends ProgressingTask implements Future<T>, CompletionStage<T>
+{
+
+    /**
+     * The states of a {@link ProgressingFuture}.
+     */
+    public enum State
+    {
+        /**
+         * The task hasn't finished yet.
+         */
+        RUNNING,
+        /**
+         * The task finished with a result.
+         */
+        COMPLETED,
+        /**
+         * The task finished with an exception.
+         */
+        FAILED,
+        /**
+         * The task was cancelled.
+         */
+        CANCELLED
+    }
+
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    protected ProgressingFuture()
+    {
+        future.whenComplete((result, error) -> fireProgressChanged(getProgress()));
+    }
+
+    /**
+     * Returns the current state of this task.
+     *
+     * @return the state
+     */
+    public State getState()
+    {
+        if (!future.isDone())
+        {
+            return State.RUNNING;
+        }
+        if (future.isCancelled())
+        {
+            return State.CANCELLED;
+        }
+        return future.isCompletedExceptionally() ? State.FAILED
+                : State.COMPLETED;
+    }
+
+    /**
+     * Returns the exception the task failed with.
+     *
+     * @return the exception or {@code null} if the task didn't fail. For a
+     * cancelled task a {@link CancellationException} is returned
+     */
+    public Throwable getError()
+    {
+        if (!future.isCompletedExceptionally())
+        {
+            return null;
+        }
+        try
+        {
+            future.join();
+            return null;
+        } catch (CancellationException ex)
+        {
+            return ex;
+        } catch (RuntimeException ex)
+        {
+            return ex.getCause() == null ? ex : ex.getCause();
+        }
+    }
+
+    /**
+     * Finishes this task with the given result. Does nothing if the task is
+     * already finished, for example because it was cancelled.
+     *
+     * @param result the result of the task
+     * @return {@code true} if the task was finished by this call
+     */
+    protected boolean complete(T result)
+    {
+        return future.complete(result);
+    }
+
+    /**
+     * Finishes this task with the given exception. Does nothing if the task
+     * is already finished.
+     *
+     * @param error the exception the task failed with
+     * @return {@code true} if the task was finished by this call
+     */
+    protected boolean fail(Throwable error)
+    {
+        return future.completeExceptionally(error);
+    }
+
+    /**
+     * Requests the task to stop. The task checks for the cancellation while
+     * running, so it may take a moment until it has stopped. The future is
+     * cancelled right away.
+     *
+     * @param mayInterruptIfRunning ignored since the task isn't interrupted
+     * @return {@code true} if the task was cancelled
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return future.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return future.isCancelled();
+    }
+
+    /**
+     * Checks whether this task is finished, no matter if it completed,
+     * failed or was cancelled.
+     *
+     * @return {@code true} if the task is finished
+     */
+    @Override
+    public boolean isDone()
+    {
+        return future.isDone();
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException
+    {
+        return future.get();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return future.get(timeout, unit);
+    }
+
+    /**
+     * Returns a new {@link CompletableFuture} that completes with the result
+     * of this task. Completing the returned future has no effect on this
+     * task.
+     *
+     * @return a future for the result of this task
+     */
+    @Override
+    public CompletableFuture<T> toCompletableFuture()
+    {
+        return future.thenApply(Function.identity());
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApply(Function<? super T, ? extends U> fn)
+    {
+        return future.thenApply(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn)
+    {
+        return future.thenApplyAsync(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor)
+    {
+        return future.thenApplyAsync(fn, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> thenAccept(Consumer<? super T> action)
+    {
+        return future.thenAccept(action);
+    }
+
+    @Override
+    public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action)
+    {
+        return future.thenAcceptAsync(action);
+    }
+
+    @Override
+    public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor)
+    {
+        return future.thenAcceptAsync(action, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> thenRun(Runnable action)
+    {
+        return future.thenRun(action);
+    }
+
+    @Override
+    public CompletionStage<Void> thenRunAsync(Runnable action)
+    {
+        return future.thenRunAsync(action);
+    }
+
+    @Override
+    public CompletionStage<Void> thenRunAsync(Runnable action, Executor executor)
+    {
+        return future.thenRunAsync(action, executor);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombine(CompletionStage<? extends U> other,
+            BiFunction<? super T, ? super U, ? extends V> fn)
+    {
+        return future.thenCombine(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other,
+            BiFunction<? super T, ? super U, ? extends V> fn)
+    {
+        return future.thenCombineAsync(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(CompletionStage<? extends U> other,
+            BiFunction<? super T, ? super U, ? extends V> fn, Executor executor)
+    {
+        return future.thenCombineAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBoth(CompletionStage<? extends U> other,
+            BiConsumer<? super T, ? super U> action)
+    {
+        return future.thenAcceptBoth(other, action);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+            BiConsumer<? super T, ? super U> action)
+    {
+        return future.thenAcceptBothAsync(other, action);
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+            BiConsumer<? super T, ? super U> action, Executor executor)
+    {
+        return future.thenAcceptBothAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBoth(CompletionStage<?> other, Runnable action)
+    {
+        return future.runAfterBoth(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action)
+    {
+        return future.runAfterBothAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action,
+            Executor executor)
+    {
+        return future.runAfterBothAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEither(CompletionStage<? extends T> other,
+            Function<? super T, U> fn)
+    {
+        return future.applyToEither(other, fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other,
+            Function<? super T, U> fn)
+    {
+        return future.applyToEitherAsync(other, fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other,
+            Function<? super T, U> fn, Executor executor)
+    {
+        return future.applyToEitherAsync(other, fn, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEither(CompletionStage<? extends T> other,
+            Consumer<? super T> action)
+    {
+        return future.acceptEither(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other,
+            Consumer<? super T> action)
+    {
+        return future.acceptEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other,
+            Consumer<? super T> action, Executor executor)
+    {
+        return future.acceptEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEither(CompletionStage<?> other, Runnable action)
+    {
+        return future.runAfterEither(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action)
+    {
+        return future.runAfterEitherAsync(other, action);
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action,
+            Executor executor)
+    {
+        return future.runAfterEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn)
+    {
+        return future.thenCompose(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn)
+    {
+        return future.thenComposeAsync(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn,
+            Executor executor)
+    {
+        return future.thenComposeAsync(fn, executor);
+    }
+
+    @Override
+    public CompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn)
+    {
+        return future.exceptionally(fn);
+    }
+
+    @Override
+    public CompletionStage<T> whenComplete(BiConsumer<? super T, ? super Throwable> action)
+    {
+        return future.whenComplete(action);
+    }
+
+    @Override
+    public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action)
+    {
+        return future.whenCompleteAsync(action);
+    }
+
+    @Override
+    public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action,
+            Executor executor)
+    {
+        return future.whenCompleteAsync(action, executor);
+    }
+
+    @Override
+    public <U> CompletionStage<U> handle(BiFunction<? super T, Throwable, ? extends U> fn)
+    {
+        return future.handle(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn)
+    {
+        return future.handleAsync(fn);
+    }
+
+    @Override
+    public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn,
+            Executor executor)
+    {
+        return future.handleAsync(fn, executor);
+    }
+}
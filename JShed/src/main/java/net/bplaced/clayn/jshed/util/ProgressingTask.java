@@ -23,15 +23,52 @@
  */
 package net.bplaced.clayn.jshed.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 /**
+ * A {@link Progresser} that can notify listeners about changes of its
+ * progress. Implementations report changes through
+ * {@link #fireProgressChanged(double)} which can coalesce the updates so that
+ * listeners aren't flooded when the progress changes in a tight loop.
+ * <p>
+ * Tasks that know how much work they did can report it through
+ * {@link #reportWork(long)}. From these reports the task derives its
+ * throughput as an exponentially weighted moving average which is updated at
+ * most every {@value #THROUGHPUT_SAMPLE_MILLIS} ms, and an estimate of the
+ * remaining time based on the current progress.
  *
  * @author Clayn <clayn_osmato@gmx.de>
  */
 public abstract class ProgressingTask implements Progresser
 {
+
+    /**
+     * The minimum time between two samples of the throughput.
+     */
+    public static final long THROUGHPUT_SAMPLE_MILLIS = 100;
+
+    private static final long SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(
+            THROUGHPUT_SAMPLE_MILLIS);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
     private Consumer<Double> onProgressChanged=null;
+    private volatile DoubleConsumer onProgress = null;
+    private volatile double minProgressDelta = 0;
+    private volatile long minProgressInterval = 0;
+    private volatile double lastProgress = Double.NaN;
+    private volatile long lastProgressTime = 0;
+    private final LongAdder work = new LongAdder();
+    private final AtomicLong startTime = new AtomicLong(NOT_STARTED);
+    private final AtomicBoolean sampling = new AtomicBoolean(false);
+    private volatile double smoothing = 5.0;
+    private volatile double throughput = Double.NaN;
+    private volatile long lastSampleTime = 0;
+    private long lastSampleWork = 0;
 
     public void setOnProgressChanged(Consumer<Double> onProgressChanged)
     {
@@ -42,6 +79,257 @@ public abstract class ProgressingTask implements Progresser
     {
         return onProgressChanged;
     }
-    
-    
+
+    /**
+     * Sets a listener for the progress that receives the progress as primitive
+     * value. It is invoked together with the one set by
+     * {@link #setOnProgressChanged(java.util.function.Consumer)}.
+     *
+     * @param onProgress the listener or {@code null} to remove it
+     */
+    public void setOnProgress(DoubleConsumer onProgress)
+    {
+        this.onProgress = onProgress;
+    }
+
+    public DoubleConsumer getOnProgress()
+    {
+        return onProgress;
+    }
+
+    /**
+     * Configures how progress updates are coalesced. An update is only
+     * delivered to the listeners if the progress changed by at least
+     * {@code minDelta} and if at least {@code minInterval} passed since the
+     * last delivered update. The first update and the update that finishes the
+     * progress are always delivered. A value of {@code 0} disables the
+     * respective check which is the default.
+     *
+     * @param minDelta the minimum change of the progress
+     * @param minInterval the minimum time between two updates
+     * @param unit the unit of {@code minInterval}
+     */
+    public void setProgressCoalescing(double minDelta, long minInterval,
+            TimeUnit unit)
+    {
+        if (minDelta < 0 || minInterval < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Coalescing thresholds must not be negative");
+        }
+        this.minProgressDelta = minDelta;
+        this.minProgressInterval = unit.toNanos(minInterval);
+    }
+
+    /**
+     * Notifies the listeners about the given progress if the update isn't
+     * coalesced with the previous one (see
+     * {@link #setProgressCoalescing(double, long, java.util.concurrent.TimeUnit)}).
+     * If no listener is set this method returns immediately. When called from
+     * multiple threads an update may occasionally be delivered more than once.
+     *
+     * @param progress the current progress
+     */
+    public final void fireProgressChanged(double progress)
+    {
+        DoubleConsumer primitive = onProgress;
+        Consumer<Double> boxed = onProgressChanged;
+        if (primitive == null && boxed == null)
+        {
+            return;
+        }
+        double last = lastProgress;
+        if (progress == last)
+        {
+            return;
+        }
+        long interval = minProgressInterval;
+        if (progress < 1.0 && !Double.isNaN(last))
+        {
+            if (Math.abs(progress - last) < minProgressDelta)
+            {
+                return;
+            }
+            if (interval > 0)
+            {
+                long now = System.nanoTime();
+                if (now - lastProgressTime < interval)
+                {
+                    return;
+                }
+                lastProgressTime = now;
+            }
+        } else if (interval > 0)
+        {
+            lastProgressTime = System.nanoTime();
+        }
+        lastProgress = progress;
+        if (primitive != null)
+        {
+            primitive.accept(progress);
+        }
+        if (boxed != null)
+        {
+            boxed.accept(progress);
+        }
+    }
+
+    /**
+     * Sets how fast the throughput follows changes of the rate. A rate change
+     * is reflected by about two thirds after the given time. The default is
+     * five seconds.
+     *
+     * @param time the time constant of the moving average
+     * @param unit the unit of {@code time}
+     */
+    public void setThroughputSmoothing(long time, TimeUnit unit)
+    {
+        if (time <= 0)
+        {
+            throw new IllegalArgumentException(
+                    "The smoothing time must be positive: " + time);
+        }
+        this.smoothing = unit.toNanos(time) / 1e9;
+    }
+
+    /**
+     * Reports that the given number of work units, for example bytes, were
+     * done. The first report starts the time measurement. This method doesn't
+     * allocate and can be called from multiple threads.
+     *
+     * @param units the number of units done since the last report
+     */
+    public void reportWork(long units)
+    {
+        work.add(units);
+        long now = System.nanoTime();
+        if (startTime.get() == NOT_STARTED
+                && startTime.compareAndSet(NOT_STARTED, now))
+        {
+            lastSampleTime = now;
+            return;
+        }
+        if (now - lastSampleTime >= SAMPLE_INTERVAL
+                && sampling.compareAndSet(false, true))
+        {
+            try
+            {
+                long elapsed = now - lastSampleTime;
+                if (elapsed >= SAMPLE_INTERVAL)
+                {
+                    long total = work.sum();
+                    double seconds = elapsed / 1e9;
+                    double rate = (total - lastSampleWork) / seconds;
+                    double current = throughput;
+                    double alpha = 1 - Math.exp(-seconds / smoothing);
+                    throughput = Double.isNaN(current) ? rate
+                            : current + alpha * (rate - current);
+                    lastSampleWork = total;
+                    lastSampleTime = now;
+                }
+            } finally
+            {
+                sampling.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of work units reported so far.
+     *
+     * @return the reported work
+     */
+    public long getWorkDone()
+    {
+        return work.sum();
+    }
+
+    /**
+     * Returns the time since the first report of work.
+     *
+     * @param unit the unit of the result
+     * @return the elapsed time or {@code 0} if no work was reported
+     */
+    public long getElapsedTime(TimeUnit unit)
+    {
+        long start = startTime.get();
+        if (start == NOT_STARTED)
+        {
+            return 0;
+        }
+        return unit.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the average throughput since the first report of work.
+     *
+     * @return the work units per second or {@code 0} if unknown
+     */
+    public double getAverageThroughput()
+    {
+        long elapsed = getElapsedTime(TimeUnit.NANOSECONDS);
+        return elapsed <= 0 ? 0 : work.sum() / (elapsed / 1e9);
+    }
+
+    /**
+     * Returns the moving average of the throughput. If no work was reported
+     * for a while the throughput decreases accordingly.
+     *
+     * @return the work units per second or {@code 0} if unknown
+     */
+    public double getCurrentThroughput()
+    {
+        double current = throughput;
+        if (Double.isNaN(current))
+        {
+            return getAverageThroughput();
+        }
+        long idle = System.nanoTime() - lastSampleTime;
+        if (idle > SAMPLE_INTERVAL)
+        {
+            current *= Math.exp(-(idle / 1e9) / smoothing);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the total number of work units of this task. Tasks whose
+     * progress isn't proportional to the reported work should return it, so
+     * the remaining time is estimated from the remaining work instead.
+     *
+     * @return the total work or {@code -1} if unknown
+     */
+    protected long getTotalWork()
+    {
+        return -1;
+    }
+
+    /**
+     * Estimates the remaining time from the current progress and throughput.
+     * The remaining work is the {@link #getTotalWork() total work} minus the
+     * reported work if the total is known. Otherwise it is derived from the
+     * reported work and the progress.
+     *
+     * @param unit the unit of the result
+     * @return the estimated remaining time, {@code 0} if the task is done or
+     * {@code -1} if it can't be estimated
+     */
+    public long getEstimatedTimeRemaining(TimeUnit unit)
+    {
+        double progress = getProgress();
+        if (progress >= 1.0)
+        {
+            return 0;
+        }
+        double rate = getCurrentThroughput();
+        long total = getTotalWork();
+        if (!(rate > 0) || (total < 0 && !(progress > 0)))
+        {
+            return -1;
+        }
+        double remaining = total >= 0 ? Math.max(0, total - work.sum())
+                : work.sum() * (1 - progress) / progress;
+        return unit.convert((long) (remaining / rate * 1e9),
+                TimeUnit.NANOSECONDS);
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import net.bplaced.clayn.jshed.io.CopyFuture;
+import net.bplaced.clayn.jshed.io.CopyResult;
+import net.bplaced.clayn.jshed.io.IOTools;
+import net.bplaced.clayn.jshed.util.MetricsRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class JShedTest
+{
+
+    @After
+    public void tearDown()
+    {
+        JShed.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentInitialization() throws InterruptedException
+    {
+        JShed.shutdown();
+        Set<ExecutorService> executors = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    executors.add(JShed.getIOExecutor());
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        Assert.assertEquals(1, executors.size());
+        Assert.assertSame(JShed.getIOExecutor(), JShed.getExecutorService());
+    }
+
+    @Test
+    public void testSeparateExecutors()
+    {
+        Assert.assertNotSame(JShed.getIOExecutor(), JShed.getComputeExecutor());
+        Assert.assertNotSame(JShed.getIOExecutor(), JShed.getScheduledExecutor());
+        Assert.assertEquals(Runtime.getRuntime().availableProcessors(),
+                JShed.getComputeExecutor().getParallelism());
+    }
+
+    @Test(timeout = 10000)
+    public void testUseVirtualThreads() throws Exception
+    {
+        ExecutorService platform = JShed.getIOExecutor();
+        boolean virtual = JShed.useVirtualThreads();
+        Assert.assertEquals(JShed.isVirtualThreadsSupported(), virtual);
+        Assert.assertEquals(virtual, platform != JShed.getIOExecutor());
+        Assert.assertEquals("done", JShed.getIOExecutor().submit(() -> "done")
+                .get());
+    }
+
+    @Test(timeout = 10000)
+    public void testIOMetrics() throws Exception
+    {
+        JShed.shutdown();
+        JShed.getIOExecutor().submit(() -> null).get();
+        Assert.assertSame(JShed.getIOMetrics(),
+                MetricsRegistry.getDefault().get(JShed.IO_METRICS));
+        Assert.assertEquals(1, JShed.getIOMetrics().getSubmittedCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testSaturatedIOExecutor() throws Exception
+    {
+        JShed.shutdown();
+        System.setProperty(JShed.IO_THREADS_PROPERTY, "2");
+        System.setProperty(JShed.IO_QUEUE_PROPERTY, "1");
+        CountDownLatch release = new CountDownLatch(1);
+        try
+        {
+            ExecutorService io = JShed.getIOExecutor();
+            CountDownLatch started = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++)
+            {
+                io.execute(() ->
+                {
+                    started.countDown();
+                    try
+                    {
+                        release.await();
+                    } catch (InterruptedException ex)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            started.await();
+            AtomicReference<Thread> runner = new AtomicReference<>();
+            Future<?> queued = io.submit(
+                    () -> runner.set(Thread.currentThread()));
+            try
+            {
+                io.execute(() ->
+                {
+                });
+                Assert.fail("Expected the task to be rejected");
+            } catch (RejectedExecutionException expected)
+            {
+            }
+            CopyFuture copy = IOTools.copyAsync(new ByteArrayInputStream(
+                    new byte[10]), new ByteArrayOutputStream(), 10);
+            try
+            {
+                copy.get();
+                Assert.fail("Expected the copy to be rejected");
+            } catch (ExecutionException ex)
+            {
+                Assert.assertTrue(ex.getCause()
+                        instanceof RejectedExecutionException);
+            }
+            Assert.assertEquals(2, JShed.getIOMetrics().getRejectedCount());
+            release.countDown();
+            queued.get();
+            Assert.assertNotSame(Thread.currentThread(), runner.get());
+        } finally
+        {
+            release.countDown();
+            System.clearProperty(JShed.IO_THREADS_PROPERTY);
+            System.clearProperty(JShed.IO_QUEUE_PROPERTY);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSaturatedDedicatedExecutor() throws Exception
+    {
+        JShed.shutdown();
+        System.setProperty(JShed.DEDICATED_THREADS_PROPERTY, "1");
+        try
+        {
+            byte[] data = new byte[1_000_000];
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ByteArrayOutputStream second = new ByteArrayOutputStream();
+            List<CopyResult> results = IOTools.copyToAll(
+                    () -> new ByteArrayInputStream(data),
+                    Arrays.asList(() -> first, () -> second), 2);
+            Assert.assertTrue(results.get(0).isSuccessful());
+            Assert.assertEquals(data.length, first.size());
+            Assert.assertFalse(results.get(1).isSuccessful());
+            Assert.assertTrue(results.get(1).getError()
+                    instanceof RejectedExecutionException);
+            CopyFuture copy = IOTools.copyPipelined(
+                    () -> new ByteArrayInputStream(data),
+                    () -> new ByteArrayOutputStream(), 2, 4096);
+            try
+            {
+                copy.get();
+                Assert.fail("Expected the copy to be rejected");
+            } catch (ExecutionException ex)
+            {
+                Assert.assertTrue(ex.getCause()
+                        instanceof RejectedExecutionException);
+            }
+        } finally
+        {
+            System.clearProperty(JShed.DEDICATED_THREADS_PROPERTY);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdown() throws InterruptedException
+    {
+        ExecutorService io = JShed.getIOExecutor();
+        JShed.shutdown();
+        Assert.assertTrue(io.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertNotSame(io, JShed.getIOExecutor());
+        Assert.assertFalse(JShed.getIOExecutor().isShutdown());
+    }
+}
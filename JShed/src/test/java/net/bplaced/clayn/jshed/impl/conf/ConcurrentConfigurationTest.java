@@ -0,0 +1,182 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.impl.conf;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.bplaced.clayn.jshed.conf.Configuration;
+import net.bplaced.clayn.jshed.conf.ConfigurationChangeListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ConcurrentConfigurationTest
+{
+
+    @Test
+    public void testSetAndGet()
+    {
+        ConcurrentConfiguration configuration = new ConcurrentConfiguration();
+        Assert.assertNull(configuration.set(new IntegerKey("size"), 42));
+        Assert.assertEquals(42, configuration.getInt("size", 7));
+        Assert.assertEquals("42", configuration.getString("size"));
+        Assert.assertEquals(Integer.valueOf(42), configuration.set(
+                new IntegerKey("size"), null));
+        Assert.assertEquals(7, configuration.getInt("size", 7));
+        Assert.assertTrue(configuration.getConfigurationNames().isEmpty());
+    }
+
+    @Test
+    public void testCopy()
+    {
+        SimpleConfiguration simple = new SimpleConfiguration();
+        simple.set(new StringKey("name"), "value");
+        simple.set(new IntegerKey("size"), 3);
+        ConcurrentConfiguration configuration = new ConcurrentConfiguration(
+                simple);
+        Assert.assertEquals("value", configuration.getString("name"));
+        Assert.assertEquals(3, configuration.getInt("size"));
+        Assert.assertEquals(simple.getConfigurationNames(),
+                configuration.getConfigurationNames());
+    }
+
+    @Test
+    public void testAddListenerWhileNotifying()
+    {
+        ConcurrentConfiguration configuration = new ConcurrentConfiguration();
+        AtomicInteger calls = new AtomicInteger(0);
+        ConfigurationChangeListener counting = new ConfigurationChangeListener()
+        {
+            @Override
+            public <T> void changed(Configuration config,
+                    Configuration.Key<T> key, T oldValue, T newValue)
+            {
+                calls.incrementAndGet();
+            }
+        };
+        configuration.addChangeListener(new ConfigurationChangeListener()
+        {
+            @Override
+            public <T> void changed(Configuration config,
+                    Configuration.Key<T> key, T oldValue, T newValue)
+            {
+                config.addChangeListener(counting);
+            }
+        });
+        configuration.set(new StringKey("name"), "first");
+        configuration.set(new StringKey("name"), "second");
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentSetReportsReplacedValues() throws InterruptedException
+    {
+        ConcurrentConfiguration configuration = new ConcurrentConfiguration();
+        ConcurrentLinkedQueue<Object> oldValues = new ConcurrentLinkedQueue<>();
+        configuration.addChangeListener(new ConfigurationChangeListener()
+        {
+            @Override
+            public <T> void changed(Configuration config,
+                    Configuration.Key<T> key, T oldValue, T newValue)
+            {
+                oldValues.add(oldValue == null ? "none" : oldValue);
+            }
+        });
+        int threads = 8;
+        int sets = 1000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            int offset = t * sets;
+            Thread worker = new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                } catch (InterruptedException ex)
+                {
+                    return;
+                }
+                IntegerKey key = new IntegerKey("value");
+                for (int i = 0; i < sets; i++)
+                {
+                    configuration.set(key, offset + i);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        Set<Object> expected = new HashSet<>();
+        expected.add("none");
+        for (int i = 0; i < threads * sets; i++)
+        {
+            expected.add(i);
+        }
+        expected.remove(configuration.getInt("value"));
+        Assert.assertEquals(threads * sets, oldValues.size());
+        Assert.assertEquals(expected, new HashSet<>(oldValues));
+    }
+
+    @Test
+    public void testDecodedValuesCachedPerKeyClass()
+    {
+        AtomicInteger decodes = new AtomicInteger();
+        Configuration.Key<Long> longKey = new Configuration.Key<Long>("size")
+        {
+            @Override
+            public Long fromString(String str)
+            {
+                decodes.incrementAndGet();
+                return str == null ? null : Long.valueOf(str);
+            }
+        };
+        ConcurrentConfiguration configuration = new ConcurrentConfiguration();
+        configuration.set(new StringKey("size"), "42");
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertEquals(42L, configuration.get(longKey).longValue());
+            Assert.assertEquals(42, configuration.getInt("size"));
+            Assert.assertEquals("42", configuration.getString("size"));
+        }
+        Assert.assertEquals(1, decodes.get());
+        configuration.set(new StringKey("size"), "43");
+        Assert.assertEquals(43L, configuration.get(longKey).longValue());
+        Assert.assertEquals(43, configuration.getInt("size"));
+        Assert.assertEquals(2, decodes.get());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.impl.conf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import net.bplaced.clayn.jshed.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class SimpleConfigurationTest
+{
+
+    @Test
+    public void testDecodedValueIsCached()
+    {
+        CountingKey key = new CountingKey("mode");
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(key, Mode.FAST);
+        int decodes = key.decodes.get();
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        Assert.assertEquals(decodes + 1, key.decodes.get());
+    }
+
+    @Test
+    public void testKeysOfSameClassCachedSeparately()
+    {
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(new StringKey("timeout"), "5");
+        ScaledKey seconds = new ScaledKey("timeout", 1);
+        ScaledKey millis = new ScaledKey("timeout", 1000);
+        for (int i = 0; i < 2; i++)
+        {
+            Assert.assertEquals(5L, configuration.get(seconds).longValue());
+            Assert.assertEquals(5000L, configuration.get(millis).longValue());
+        }
+    }
+
+    @Test
+    public void testCachedKeysAreBounded()
+    {
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(new CountingKey("mode"), Mode.FAST);
+        CountingKey key = new CountingKey("mode");
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        for (int i = 0; i < SimpleConfiguration.MAX_KEYS; i++)
+        {
+            Assert.assertEquals(Mode.FAST, configuration.get(
+                    new CountingKey("mode")));
+        }
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        Assert.assertEquals(2, key.decodes.get());
+    }
+
+    @Test
+    public void testSetInvalidates()
+    {
+        CountingKey key = new CountingKey("mode");
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(key, Mode.FAST);
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        Assert.assertEquals(Mode.FAST, configuration.set(key, Mode.SAFE));
+        Assert.assertEquals(Mode.SAFE, configuration.get(key));
+    }
+
+    @Test
+    public void testSetInvalidatesOnlyItsName()
+    {
+        CountingKey key = new CountingKey("mode");
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(key, Mode.FAST);
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        int decodes = key.decodes.get();
+        configuration.set(new IntegerKey("size"), 42);
+        Assert.assertEquals(Mode.FAST, configuration.get(key));
+        Assert.assertEquals(decodes, key.decodes.get());
+    }
+
+    @Test
+    public void testKeyTypesCachedSeparately()
+    {
+        CountingKey key = new CountingKey("mode");
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(key, Mode.SAFE);
+        Assert.assertEquals(Mode.SAFE, configuration.get(key));
+        Assert.assertEquals("SAFE", configuration.getString("mode"));
+        int decodes = key.decodes.get();
+        for (int i = 0; i < 3; i++)
+        {
+            Assert.assertEquals(Mode.SAFE, configuration.get(key));
+            Assert.assertEquals("SAFE", configuration.getString("mode"));
+        }
+        Assert.assertEquals(decodes, key.decodes.get());
+    }
+
+    @Test
+    public void testDifferentKeyTypes()
+    {
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        configuration.set(new IntegerKey("size"), 42);
+        Assert.assertEquals(42, configuration.getInt("size"));
+        Assert.assertEquals("42", configuration.getString("size"));
+        Assert.assertEquals(42, configuration.getInt("size", 7));
+    }
+
+    @Test
+    public void testGetIntDefault()
+    {
+        SimpleConfiguration configuration = new SimpleConfiguration();
+        Assert.assertEquals(7, configuration.getInt("missing", 7));
+        Assert.assertEquals(7, configuration.getInt("missing", 7));
+        configuration.set(new IntegerKey("missing"), 3);
+        Assert.assertEquals(3, configuration.getInt("missing", 7));
+    }
+
+    private enum Mode
+    {
+        FAST, SAFE
+    }
+
+    private static final class CountingKey extends Configuration.Key<Mode>
+    {
+
+        private final AtomicInteger decodes = new AtomicInteger(0);
+
+        private CountingKey(String key)
+        {
+            super(key);
+        }
+
+        @Override
+        public Mode fromString(String str)
+        {
+            decodes.incrementAndGet();
+            return str == null ? null : Mode.valueOf(str);
+        }
+    }
+
+    private static final class ScaledKey extends Configuration.Key<Long>
+    {
+
+        private final long factor;
+
+        private ScaledKey(String key, long factor)
+        {
+            super(key);
+            this.factor = factor;
+        }
+
+        @Override
+        public Long fromString(String str)
+        {
+            return str == null ? null : Long.parseLong(str) * factor;
+        }
+
+        @Override
+        public String toString(Long val)
+        {
+            return val == null ? null : Long.toString(val / factor);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class BufferPoolTest
+{
+
+    @Test
+    public void testSizeFor()
+    {
+        Assert.assertEquals(BufferPool.DEFAULT_SIZE, BufferPool.sizeFor(-1));
+        Assert.assertEquals(BufferPool.MIN_SIZE, BufferPool.sizeFor(10));
+        Assert.assertEquals(64 * 1024, BufferPool.sizeFor(40_000));
+        Assert.assertEquals(BufferPool.MAX_SIZE, BufferPool.sizeFor(
+                Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testReuseHeap()
+    {
+        BufferPool pool = new BufferPool(1);
+        byte[] first = pool.acquire(5000);
+        Assert.assertEquals(8 * 1024, first.length);
+        pool.release(first);
+        Assert.assertSame(first, pool.acquire(6000));
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void testSharedTier()
+    {
+        BufferPool pool = new BufferPool(1);
+        byte[] first = pool.acquire(100);
+        byte[] second = pool.acquire(100);
+        byte[] third = pool.acquire(100);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        Assert.assertSame(first, pool.acquire(100));
+        Assert.assertSame(second, pool.acquire(100));
+        Assert.assertNotSame(third, pool.acquire(100));
+    }
+
+    @Test
+    public void testOversizedNotPooled()
+    {
+        BufferPool pool = new BufferPool(4);
+        byte[] big = pool.acquire(BufferPool.MAX_SIZE + 1);
+        Assert.assertEquals(BufferPool.MAX_SIZE + 1, big.length);
+        pool.release(big);
+        Assert.assertNotSame(big, pool.acquire(BufferPool.MAX_SIZE + 1));
+        Assert.assertEquals(0, pool.getHits());
+    }
+
+    @Test
+    public void testLargeBuffersNotCachedPerThread()
+    {
+        BufferPool pool = new BufferPool(0);
+        byte[] large = pool.acquire(BufferPool.LOCAL_MAX_SIZE * 2);
+        pool.release(large);
+        Assert.assertNotSame(large, pool.acquire(BufferPool.LOCAL_MAX_SIZE * 2));
+        byte[] small = pool.acquire(BufferPool.LOCAL_MAX_SIZE);
+        pool.release(small);
+        Assert.assertSame(small, pool.acquire(BufferPool.LOCAL_MAX_SIZE));
+    }
+
+    @Test
+    public void testReuseDirect()
+    {
+        BufferPool pool = new BufferPool(1);
+        ByteBuffer buffer = pool.acquireDirect(1000);
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(1000, buffer.limit());
+        buffer.put((byte) 1);
+        pool.releaseDirect(buffer);
+        ByteBuffer again = pool.acquireDirect(2000);
+        Assert.assertSame(buffer, again);
+        Assert.assertEquals(0, again.position());
+        Assert.assertEquals(2000, again.limit());
+    }
+}
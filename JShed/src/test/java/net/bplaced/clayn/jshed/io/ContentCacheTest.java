@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ContentCacheTest
+{
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWatchThread() throws IOException
+    {
+        Set<Thread> before = Thread.getAllStackTraces().keySet();
+        ContentCache cache = new ContentCache(1024);
+        List<Thread> started = new ArrayList<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (!before.contains(thread) && thread.getName().startsWith(
+                    "jshed-content-cache-"))
+            {
+                started.add(thread);
+            }
+        }
+        Assert.assertEquals(1, started.size());
+        Assert.assertTrue(started.get(0).isDaemon());
+        cache.close();
+        Assert.assertFalse(started.get(0).isAlive());
+    }
+
+    @Test
+    public void testHit() throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "cached content".getBytes("UTF-8"));
+        try (ContentCache cache = new ContentCache(1024))
+        {
+            DataSource source = cache.getSource(file);
+            Assert.assertEquals("cached content", read(source));
+            Assert.assertEquals("cached content", read(source));
+            Assert.assertEquals(1, cache.getMisses());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(14, cache.getSize());
+        }
+    }
+
+    @Test
+    public void testChangedFile() throws IOException
+    {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "old".getBytes("UTF-8"));
+        try (ContentCache cache = new ContentCache(1024, true))
+        {
+            Assert.assertEquals("old", read(cache.getSource(file)));
+            Files.write(file, "new content".getBytes("UTF-8"));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(
+                    System.currentTimeMillis() + 5000));
+            Assert.assertEquals("new content", read(cache.getSource(file)));
+            Assert.assertEquals(2, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException
+    {
+        Path first = folder.newFile().toPath();
+        Path second = folder.newFile().toPath();
+        Path big = folder.newFile().toPath();
+        Files.write(first, new byte[60]);
+        Files.write(second, new byte[60]);
+        Files.write(big, new byte[200]);
+        try (ContentCache cache = new ContentCache(100))
+        {
+            read(cache.getSource(first));
+            read(cache.getSource(second));
+            Assert.assertEquals(1, cache.getEntryCount());
+            Assert.assertEquals(60, cache.getSize());
+            read(cache.getSource(second));
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(200, read(cache.getSource(big)).length());
+            Assert.assertEquals(1, cache.getEntryCount());
+        }
+    }
+
+    private static String read(DataSource source) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = source.getSource())
+        {
+            IOTools.copy(in, out);
+        }
+        return out.toString("UTF-8");
+    }
+}
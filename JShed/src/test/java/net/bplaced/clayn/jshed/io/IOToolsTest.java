@@ -29,12 +29,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import net.bplaced.clayn.jshed.util.ProgressingFuture;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 /**
@@ -44,6 +65,9 @@ import org.mockito.Mockito;
 public class IOToolsTest
 {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     public IOToolsTest()
     {
     }
@@ -132,4 +156,632 @@ public class IOToolsTest
         byte[] result = dest.toByteArray();
         Assert.assertArrayEquals(data, result);
     }
+
+    @Test
+    public void testCopyFiles() throws IOException
+    {
+        byte[] data = randomData(300_000);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, data);
+        Files.write(dest, "old content that is replaced".getBytes("UTF-8"));
+        IOTools.copy(IOTools.toIOObject(src), IOTools.toIOObject(dest));
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test
+    public void testCopyFileToStream() throws IOException
+    {
+        byte[] data = randomData(300_000);
+        Path src = folder.newFile().toPath();
+        Files.write(src, data);
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        IOTools.copy(IOTools.toIOObject(src), () -> dest);
+        Assert.assertArrayEquals(data, dest.toByteArray());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyParallel() throws Exception
+    {
+        byte[] data = randomData(5 * 1024 * 1024 + 17);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, data);
+        CopyFuture future = IOTools.copyParallel(src, dest, 4);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertEquals(1.0, future.getProgress(), 0.0);
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyParallelFailure() throws Exception
+    {
+        byte[] data = randomData(4 * 1024 * 1024);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, data);
+        FileChannel out = new FailingFileChannel(FileChannel.open(dest,
+                StandardOpenOption.WRITE), 1024 * 1024);
+        CopyFuture future = ParallelFileCopy.start(
+                FileChannel.open(src, StandardOpenOption.READ), out, 4);
+        try
+        {
+            future.get();
+            Assert.fail("The copy must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        }
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(ProgressingFuture.State.FAILED, future.getState());
+        Assert.assertTrue(future.getProgress() < 1.0);
+        Assert.assertFalse(out.isOpen());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyParallelCloseFailure() throws Exception
+    {
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, randomData(1000));
+        FileChannel in = new FailingFileChannel(FileChannel.open(src,
+                StandardOpenOption.READ), Long.MAX_VALUE)
+        {
+            @Override
+            protected void implCloseChannel() throws IOException
+            {
+                super.implCloseChannel();
+                throw new IOException("Simulated close failure");
+            }
+        };
+        FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE);
+        CopyFuture future = ParallelFileCopy.start(in, out, 1);
+        try
+        {
+            future.get();
+            Assert.fail("The copy must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertEquals("Simulated close failure",
+                    ex.getCause().getMessage());
+        }
+        Assert.assertFalse(out.isOpen());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyAsyncFiles() throws Exception
+    {
+        byte[] data = randomData(3 * 1024 * 1024 + 5);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, data);
+        CopyFuture future = IOTools.copyAsync(src, dest);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertEquals(1.0, future.getProgress(), 0.0);
+        Assert.assertEquals(data.length, future.getWorkDone());
+        Assert.assertTrue(future.getAverageThroughput() > 0);
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyAsyncStream() throws Exception
+    {
+        byte[] data = randomData(200_000);
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        CopyFuture future = IOTools.copyAsync(new ByteArrayInputStream(data),
+                dest, data.length);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertEquals(ProgressingFuture.State.COMPLETED,
+                future.getState());
+        Assert.assertArrayEquals(data, dest.toByteArray());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyAsyncStreamCancel() throws Exception
+    {
+        CountDownLatch reading = new CountDownLatch(1);
+        InputStream endless = new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                reading.countDown();
+                return 0;
+            }
+        };
+        OutputStream dest = Mockito.mock(OutputStream.class);
+        CopyFuture future = IOTools.copyAsync(endless, dest, -1);
+        reading.await();
+        Assert.assertTrue(future.cancel(false));
+        Assert.assertEquals(ProgressingFuture.State.CANCELLED,
+                future.getState());
+        Mockito.verify(dest, Mockito.timeout(5000)).flush();
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyResumable() throws Exception
+    {
+        byte[] data = randomData(3 * 1024 * 1024);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Path checkpoint = folder.getRoot().toPath().resolve("copy.checkpoint");
+        Files.write(src, data);
+        int committed = 1024 * 1024;
+        byte[] partial = Arrays.copyOf(data, committed + 1000);
+        partial[committed + 10]++;
+        Files.write(dest, partial);
+        try (FileChannel channel = FileChannel.open(dest, StandardOpenOption.READ))
+        {
+            ResumableCopy.storeCheckpoint(checkpoint, attributes(src), channel,
+                    committed, true);
+        }
+        CopyFuture future = IOTools.copyResumable(src, dest, checkpoint, true);
+        Assert.assertEquals(data.length - committed, future.get().longValue());
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+        Assert.assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyResumableChangedDestination() throws Exception
+    {
+        byte[] data = randomData(2 * 1024 * 1024);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Path checkpoint = folder.getRoot().toPath().resolve("copy.checkpoint");
+        Files.write(src, data);
+        byte[] partial = Arrays.copyOf(data, 1024 * 1024);
+        Files.write(dest, partial);
+        try (FileChannel channel = FileChannel.open(dest, StandardOpenOption.READ))
+        {
+            ResumableCopy.storeCheckpoint(checkpoint, attributes(src), channel,
+                    partial.length, true);
+        }
+        partial[partial.length - 1]++;
+        Files.write(dest, partial);
+        CopyFuture future = IOTools.copyResumable(src, dest, checkpoint, true);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyResumableVerifyWithoutHash() throws Exception
+    {
+        byte[] data = randomData(2 * 1024 * 1024);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Path checkpoint = folder.getRoot().toPath().resolve("copy.checkpoint");
+        Files.write(src, data);
+        Files.write(dest, Arrays.copyOf(data, 1024 * 1024));
+        try (FileChannel channel = FileChannel.open(dest, StandardOpenOption.READ))
+        {
+            ResumableCopy.storeCheckpoint(checkpoint, attributes(src), channel,
+                    1024 * 1024, false);
+            Assert.assertEquals(1024 * 1024, ResumableCopy.resumeOffset(
+                    checkpoint, attributes(src), channel, false));
+            Assert.assertEquals(0, ResumableCopy.resumeOffset(checkpoint,
+                    attributes(src), channel, true));
+        }
+        CopyFuture future = IOTools.copyResumable(src, dest, checkpoint, true);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCopyAsyncFilesMissingSource() throws IOException
+    {
+        Path src = folder.getRoot().toPath().resolve("missing");
+        IOTools.copyAsync(src, folder.newFile().toPath());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyAll() throws Exception
+    {
+        List<Map.Entry<DataSource, DataSink>> copies = new ArrayList<>();
+        List<ByteArrayOutputStream> sinks = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            byte[] data = randomData(i * 100);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            sinks.add(sink);
+            copies.add(new AbstractMap.SimpleEntry<>(
+                    () -> new ByteArrayInputStream(data), () -> sink));
+        }
+        DataSource failing = () ->
+        {
+            throw new IOException("Not readable");
+        };
+        copies.add(new AbstractMap.SimpleEntry<>(failing,
+                ByteArrayOutputStream::new));
+        BulkCopyTask task = IOTools.copyAll(copies, 4);
+        List<CopyResult> results = task.get();
+        Assert.assertEquals(results, task.getResults());
+        Assert.assertEquals(51, results.size());
+        for (int i = 0; i < 50; i++)
+        {
+            Assert.assertTrue(results.get(i).isSuccessful());
+            Assert.assertEquals(i * 100, results.get(i).getBytes());
+            Assert.assertArrayEquals(randomData(i * 100),
+                    sinks.get(i).toByteArray());
+        }
+        Assert.assertFalse(results.get(50).isSuccessful());
+        Assert.assertEquals(1, task.getFailedCount());
+        Assert.assertEquals(1.0, task.getProgress(), 0.0);
+        Assert.assertEquals(51, task.getWorkDone());
+        Assert.assertEquals(0, task.getEstimatedTimeRemaining(
+                TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCopyWithObservers() throws Exception
+    {
+        byte[] data = randomData(100_000);
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        CopyResult result = IOTools.copy(() -> new ByteArrayInputStream(data),
+                () -> dest, CopyObserver.of(new CRC32()),
+                CopyObserver.of(MessageDigest.getInstance("SHA-256")));
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Assert.assertEquals(data.length, result.getBytes());
+        Assert.assertArrayEquals(data, dest.toByteArray());
+        Assert.assertEquals(crc.getValue(),
+                result.<CopyObserver.ChecksumObserver>getObserver(0).getValue());
+        Assert.assertArrayEquals(
+                MessageDigest.getInstance("SHA-256").digest(data),
+                result.<CopyObserver.DigestObserver>getObserver(1).getValue());
+    }
+
+    @Test
+    public void testCopySparse() throws IOException
+    {
+        int block = SparseCopy.BLOCK_SIZE;
+        byte[] data = new byte[block * 600];
+        System.arraycopy(randomData(block + 10), 0, data, 0, block + 10);
+        System.arraycopy(randomData(100), 0, data, block * 300 + 50, 100);
+        Path src = folder.newFile().toPath();
+        Path dest = folder.newFile().toPath();
+        Files.write(src, data);
+        long written = IOTools.copySparse(
+                (ChannelSource) IOTools.toIOObject(src),
+                (ChannelSink) IOTools.toIOObject(dest));
+        Assert.assertEquals(block * 3 + 1, written);
+        Assert.assertArrayEquals(data, Files.readAllBytes(dest));
+    }
+
+    @Test
+    public void testCopyDelta() throws IOException
+    {
+        int blockSize = BlockSignature.DEFAULT_BLOCK_SIZE;
+        byte[] data = randomData(blockSize * 10 + 123);
+        Path dest = folder.newFile().toPath();
+        Files.write(dest, data);
+        data[blockSize * 3 + 7]++;
+        byte[] changed = data;
+        long written = IOTools.copyDelta(
+                () -> new ByteArrayInputStream(changed),
+                (RandomAccessSink) IOTools.toIOObject(dest));
+        Assert.assertEquals(blockSize, written);
+        Assert.assertArrayEquals(changed, Files.readAllBytes(dest));
+    }
+
+    @Test
+    public void testCopyDeltaWithStoredSignature() throws IOException
+    {
+        byte[] data = randomData(5000);
+        Path dest = folder.newFile().toPath();
+        RandomAccessSink sink = (RandomAccessSink) IOTools.toIOObject(dest);
+        BlockSignature signature = new BlockSignature(1024);
+        Assert.assertEquals(5000, IOTools.copyDelta(
+                () -> new ByteArrayInputStream(data), sink, signature));
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        signature.store(stored);
+        BlockSignature loaded = BlockSignature.load(new ByteArrayInputStream(
+                stored.toByteArray()));
+        Assert.assertEquals(5000, loaded.getLength());
+        Assert.assertEquals(5, loaded.getBlockCount());
+        byte[] shorter = Arrays.copyOf(data, 4096);
+        shorter[100]++;
+        Assert.assertEquals(1024, IOTools.copyDelta(
+                () -> new ByteArrayInputStream(shorter), sink, loaded));
+        Assert.assertArrayEquals(shorter, Files.readAllBytes(dest));
+        Assert.assertEquals(4096, loaded.getLength());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyTree() throws Exception
+    {
+        Path src = folder.newFolder("tree").toPath();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            Path dir = Files.createDirectories(src.resolve("dir" + i).resolve(
+                    "sub"));
+            for (int j = 0; j < 5; j++)
+            {
+                Path file = (j % 2 == 0 ? dir : dir.getParent()).resolve(
+                        "file" + j);
+                Files.write(file, randomData(i * 1000 + j));
+                files.add(src.relativize(file));
+            }
+        }
+        Files.createDirectories(src.resolve("empty"));
+        Path dest = folder.getRoot().toPath().resolve("copy");
+        TreeCopyTask task = IOTools.copyTree(src, dest, new CopyOptions());
+        long copiedBytes = task.get();
+        Assert.assertEquals(task.getCopiedBytes(), copiedBytes);
+        Assert.assertEquals(20, task.getCopiedFiles());
+        Assert.assertEquals(task.getTotalBytes(), task.getCopiedBytes());
+        Assert.assertEquals(1.0, task.getProgress(), 0.0);
+        Assert.assertTrue(Files.isDirectory(dest.resolve("empty")));
+        for (Path file : files)
+        {
+            Assert.assertArrayEquals(Files.readAllBytes(src.resolve(file)),
+                    Files.readAllBytes(dest.resolve(file)));
+        }
+        task = IOTools.copyTree(src, dest, new CopyOptions());
+        try
+        {
+            task.get();
+            Assert.fail("The copy must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        }
+        long copied = task.getCopiedFiles();
+        Thread.sleep(200);
+        Assert.assertEquals(copied, task.getCopiedFiles());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyTreeUnsupportedFile() throws Exception
+    {
+        Path src = folder.newFolder("special").toPath();
+        Files.write(src.resolve("file"), randomData(100));
+        Path fifo = src.resolve("fifo");
+        Process mkfifo;
+        try
+        {
+            mkfifo = new ProcessBuilder("mkfifo", fifo.toString()).start();
+        } catch (IOException ex)
+        {
+            mkfifo = null;
+        }
+        Assume.assumeTrue(mkfifo != null && mkfifo.waitFor() == 0);
+        Path dest = folder.getRoot().toPath().resolve("special-copy");
+        TreeCopyTask task = IOTools.copyTree(src, dest, new CopyOptions());
+        try
+        {
+            task.get();
+            Assert.fail("The copy must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(ProgressingFuture.State.FAILED, task.getState());
+        Assert.assertEquals(-1, task.getProgress(), 0.0);
+        Assert.assertTrue(task.getCopiedFiles() <= 1);
+        Assert.assertTrue(task.getCopiedBytes() <= 100);
+        Assert.assertFalse(Files.exists(dest.resolve("fifo")));
+    }
+
+    @Test
+    public void testMappedIOObject() throws IOException
+    {
+        byte[] data = randomData(10_000);
+        Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        MappedIOObject mapped = new MappedIOObject(file, 4096);
+        Assert.assertEquals(3, mapped.getChunkCount());
+        Assert.assertEquals(data.length, mapped.size());
+        ByteBuffer slice = mapped.slice(4000, 200);
+        Assert.assertEquals(200, slice.remaining());
+        for (int i = 0; i < 200; i++)
+        {
+            Assert.assertEquals(data[4000 + i], slice.get(i));
+        }
+        Assert.assertEquals(1808, mapped.getChunk(2).remaining());
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        IOTools.copy(mapped, () -> copy);
+        Assert.assertArrayEquals(data, copy.toByteArray());
+
+        byte[] other = randomData(20);
+        IOTools.copy(() -> new ByteArrayInputStream(other), mapped);
+        Assert.assertEquals(20, mapped.size());
+        Assert.assertEquals(other[5], mapped.slice(5, 1).get());
+    }
+
+    @Test
+    public void testMappedIOObjectSourceThenSink() throws IOException
+    {
+        byte[] data = randomData(10_000);
+        Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        MappedIOObject mapped = new MappedIOObject(file, 4096);
+        ByteBuffer slice = mapped.slice(9000, 100);
+        byte[] other = randomData(20);
+        try (InputStream in = mapped.getSource())
+        {
+            byte[] start = new byte[100];
+            Assert.assertEquals(100, in.read(start));
+            try (OutputStream out = mapped.getSink())
+            {
+                out.write(other);
+            }
+            Assert.assertArrayEquals(other, Files.readAllBytes(file));
+            ByteArrayOutputStream rest = new ByteArrayOutputStream();
+            IOTools.transfer(in, rest);
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 100, data.length),
+                    rest.toByteArray());
+        }
+        Assert.assertEquals(data[9050], slice.get(50));
+        Assert.assertEquals(20, mapped.size());
+        Assert.assertEquals(other[5], mapped.slice(5, 1).get());
+
+        slice = mapped.slice(10, 10);
+        try (FileChannel channel = mapped.getRandomAccessChannel())
+        {
+            Assert.assertEquals(20, channel.size());
+            channel.truncate(10);
+        }
+        Assert.assertEquals(other[15], slice.get(5));
+        Assert.assertEquals(10, mapped.size());
+        Assert.assertEquals(1, folder.getRoot().listFiles(
+                (dir, name) -> name.startsWith(file.getFileName().toString()))
+                .length);
+    }
+
+    @Test
+    public void testSegmentedIOObject() throws IOException
+    {
+        byte[] data = randomData(200_000);
+        try (SegmentedIOObject memory = new SegmentedIOObject(4096, true,
+                Long.MAX_VALUE))
+        {
+            IOTools.copy(() -> new ByteArrayInputStream(data), memory);
+            Assert.assertEquals(data.length, memory.size());
+            Assert.assertFalse(memory.isSpilled());
+            for (int i = 0; i < 2; i++)
+            {
+                ByteArrayOutputStream copy = new ByteArrayOutputStream();
+                IOTools.copy(memory, () -> copy);
+                Assert.assertArrayEquals(data, copy.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentedIOObjectSpill() throws IOException
+    {
+        byte[] data = randomData(200_000);
+        try (SegmentedIOObject memory = new SegmentedIOObject(4096, false,
+                50_000))
+        {
+            IOTools.copy(() -> new ByteArrayInputStream(data), memory);
+            Assert.assertTrue(memory.isSpilled());
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            IOTools.copy(memory, () -> copy);
+            Assert.assertArrayEquals(data, copy.toByteArray());
+            IOTools.copy(() -> new ByteArrayInputStream(new byte[10]), memory);
+            Assert.assertFalse(memory.isSpilled());
+            Assert.assertEquals(10, memory.size());
+        }
+    }
+
+    @Test
+    public void testSegmentedIOObjectSourceAfterReset() throws IOException
+    {
+        byte[] data = randomData(1_500_000);
+        byte[] other = randomData(1_500_000);
+        try (SegmentedIOObject memory = new SegmentedIOObject(512 * 1024, false,
+                2_000_000))
+        {
+            IOTools.copy(() -> new ByteArrayInputStream(data), memory);
+            InputStream first = memory.getSource();
+            IOTools.copy(() -> new ByteArrayInputStream(other), memory);
+            InputStream second = memory.getSource();
+            IOTools.copy(() -> new ByteArrayInputStream(new byte[3_000_000]),
+                    memory);
+            Assert.assertTrue(memory.isSpilled());
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            IOTools.transfer(first, copy);
+            Assert.assertArrayEquals(data, copy.toByteArray());
+            copy.reset();
+            IOTools.transfer(second, copy);
+            Assert.assertArrayEquals(other, copy.toByteArray());
+        }
+    }
+
+    @Test
+    public void testSegmentedIOObjectSpilledSourceWhileWriting()
+            throws IOException
+    {
+        byte[] data = randomData(100_000);
+        try (SegmentedIOObject memory = new SegmentedIOObject(4096, false,
+                50_000))
+        {
+            try (OutputStream sink = memory.getSink())
+            {
+                sink.write(data);
+                sink.flush();
+                Assert.assertTrue(memory.isSpilled());
+                InputStream source = memory.getSource();
+                sink.write(randomData(10_000));
+                sink.flush();
+                ByteArrayOutputStream copy = new ByteArrayOutputStream();
+                IOTools.transfer(source, copy);
+                source.close();
+                Assert.assertArrayEquals(data, copy.toByteArray());
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyToAll() throws IOException
+    {
+        byte[] data = randomData(1_000_000);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        DataSink failing = () -> new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("Disk full");
+            }
+        };
+        List<CopyResult> results = IOTools.copyToAll(
+                () -> new ByteArrayInputStream(data),
+                Arrays.asList(() -> first, failing, () -> second), 2);
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals(data.length, results.get(0).getBytes());
+        Assert.assertFalse(results.get(1).isSuccessful());
+        Assert.assertEquals(data.length, results.get(2).getBytes());
+        Assert.assertArrayEquals(data, first.toByteArray());
+        Assert.assertArrayEquals(data, second.toByteArray());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyPipelined() throws Exception
+    {
+        byte[] data = randomData(1_000_000);
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        CopyFuture future = IOTools.copyPipelined(
+                () -> new ByteArrayInputStream(data), () -> dest, 4, 10_000);
+        Assert.assertEquals(data.length, future.get().longValue());
+        Assert.assertArrayEquals(data, dest.toByteArray());
+    }
+
+    @Test(timeout = 10000)
+    public void testCopyPipelinedFailingSink() throws Exception
+    {
+        byte[] data = randomData(100_000);
+        CopyFuture future = IOTools.copyPipelined(
+                () -> new ByteArrayInputStream(data), () -> new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("Disk full");
+            }
+        }, 2, 1000);
+        try
+        {
+            future.get();
+            Assert.fail("The copy must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException
+    {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    private static byte[] randomData(int size)
+    {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ParallelGzipTest
+{
+
+    @Test
+    public void testCompressedIsStandardGzip() throws IOException
+    {
+        byte[] data = testData(1_000_000);
+        byte[] compressed = compress(data, 64 * 1024);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(
+                compressed)))
+        {
+            IOTools.copy(in, result);
+        }
+        Assert.assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        byte[] data = testData(1_000_000);
+        byte[] compressed = compress(data, 64 * 1024);
+        Assert.assertArrayEquals(data, decompress(compressed));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        byte[] compressed = compress(new byte[0], 1024);
+        Assert.assertTrue(compressed.length > 0);
+        Assert.assertArrayEquals(new byte[0], decompress(compressed));
+    }
+
+    @Test
+    public void testReadForeignGzip() throws IOException
+    {
+        byte[] data = testData(300_000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed))
+        {
+            out.write(data);
+        }
+        Assert.assertArrayEquals(data, decompress(compressed.toByteArray()));
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidMemberSize() throws IOException
+    {
+        byte[] member = compress(testData(1000), 4096);
+        setInt(member, 16, Integer.MAX_VALUE - 16);
+        try
+        {
+            GzipMembers.readMember(new PushbackInputStream(
+                    new ByteArrayInputStream(member), GzipMembers.HEADER_SIZE));
+            Assert.fail("Expected an IOException");
+        } catch (IOException expected)
+        {
+        }
+        setInt(member, 16, -1);
+        try
+        {
+            GzipMembers.readMember(new PushbackInputStream(
+                    new ByteArrayInputStream(member), GzipMembers.HEADER_SIZE));
+            Assert.fail("Expected an IOException");
+        } catch (IOException expected)
+        {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidUncompressedSize() throws IOException
+    {
+        byte[] member = compress(testData(1000), 4096);
+        setInt(member, member.length - 4, Integer.MAX_VALUE - 16);
+        try
+        {
+            decompress(member);
+            Assert.fail("Expected an IOException");
+        } catch (IOException expected)
+        {
+        }
+    }
+
+    private static void setInt(byte[] buffer, int offset, int value)
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            buffer[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    private static byte[] compress(byte[] data, int blockSize) throws IOException
+    {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        IOTools.copy(() -> new ByteArrayInputStream(data),
+                new ParallelGzipSink(() -> compressed, blockSize, 6));
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException
+    {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        IOTools.copy(new ParallelGzipSource(
+                () -> new ByteArrayInputStream(compressed), 3), () -> result);
+        return result.toByteArray();
+    }
+
+    private static byte[] testData(int size)
+    {
+        byte[] data = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++)
+        {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class CompositeProgressTest
+{
+
+    @Test
+    public void testWeights()
+    {
+        CompositeProgress progress = new CompositeProgress();
+        CompositeProgress.Work small = progress.addWork(1, 10);
+        CompositeProgress.Work big = progress.addWork(3, 1000);
+        small.complete();
+        Assert.assertEquals(0.25, progress.getProgress(), 1e-9);
+        big.report(500);
+        Assert.assertEquals(0.625, progress.getProgress(), 1e-6);
+        big.report(5000);
+        Assert.assertEquals(1.0, progress.getProgress(), 0.0);
+        Assert.assertTrue(progress.isDone());
+        Assert.assertEquals(1000, big.getDone());
+    }
+
+    @Test
+    public void testGroups()
+    {
+        CompositeProgress root = new CompositeProgress();
+        CompositeProgress group = root.addGroup();
+        CompositeProgress.Work direct = root.addWork(2, 1);
+        CompositeProgress.Work nested = group.addWork(2, 4);
+        nested.report(2);
+        Assert.assertEquals(0.5, group.getProgress(), 1e-9);
+        Assert.assertEquals(0.25, root.getProgress(), 1e-9);
+        group.addWork(4, 1);
+        Assert.assertEquals(8, root.getWeight());
+        Assert.assertEquals(1 / 6.0, group.getProgress(), 1e-9);
+        direct.complete();
+        Assert.assertEquals(0.375, root.getProgress(), 1e-9);
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentReports() throws InterruptedException
+    {
+        CompositeProgress progress = new CompositeProgress();
+        List<Double> updates = new ArrayList<>();
+        progress.setOnProgress(value ->
+        {
+            synchronized (updates)
+            {
+                updates.add(value);
+            }
+        });
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            CompositeProgress.Work work = progress.addWork(i + 1, 997);
+            threads[i] = new Thread(() ->
+            {
+                for (int j = 0; j < 997; j++)
+                {
+                    work.report(1);
+                }
+            });
+        }
+        for (Thread thread : threads)
+        {
+            thread.start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        Assert.assertEquals(1.0, progress.getProgress(), 0.0);
+        Assert.assertFalse(updates.isEmpty());
+    }
+}
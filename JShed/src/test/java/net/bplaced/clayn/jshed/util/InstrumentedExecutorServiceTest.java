@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class InstrumentedExecutorServiceTest
+{
+
+    private InstrumentedExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = new InstrumentedExecutorService(
+                Executors.newFixedThreadPool(1));
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testCounts() throws Exception
+    {
+        ExecutorMetrics metrics = executor.getMetrics();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() ->
+        {
+            started.countDown();
+            try
+            {
+                release.await();
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Future<?> failing = executor.submit(() ->
+        {
+            throw new IllegalStateException();
+        });
+        started.await();
+        Assert.assertEquals(1, metrics.getActiveCount());
+        Assert.assertEquals(1, metrics.getQueuedCount());
+        Assert.assertEquals(1, metrics.getPoolSize());
+        release.countDown();
+        try
+        {
+            failing.get();
+            Assert.fail("The task must fail");
+        } catch (ExecutionException ex)
+        {
+            Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, metrics.getSubmittedCount());
+        Assert.assertEquals(2, metrics.getCompletedCount());
+        Assert.assertEquals(1, metrics.getFailedCount());
+        Assert.assertEquals(0, metrics.getQueuedCount());
+        Assert.assertEquals(0, metrics.getActiveCount());
+        Assert.assertEquals(2, metrics.getRunTime().getCount());
+        Assert.assertTrue(metrics.getMaxWaitTime() > 0);
+    }
+
+    @Test
+    public void testRejected()
+    {
+        executor.shutdown();
+        try
+        {
+            executor.execute(() ->
+            {
+            });
+            Assert.fail("The task must be rejected");
+        } catch (RejectedExecutionException ex)
+        {
+            Assert.assertEquals(1, executor.getMetrics().getRejectedCount());
+            Assert.assertEquals(0, executor.getMetrics().getQueuedCount());
+        }
+    }
+
+    @Test
+    public void testHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+        {
+            histogram.record(i);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50.5, histogram.getMean(), 0.0);
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(63, histogram.getPercentile(50));
+        Assert.assertEquals(100, histogram.getPercentile(99));
+        Assert.assertEquals(1, histogram.getBucketCounts()[1]);
+    }
+
+    @Test
+    public void testRegistry() throws Exception
+    {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.register("test", executor.getMetrics());
+        executor.submit(() -> null).get();
+        Assert.assertSame(executor.getMetrics(), registry.get("test"));
+        Object submitted = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(MetricsRegistry.objectName("test"),
+                        "SubmittedCount");
+        Assert.assertEquals(1L, submitted);
+        registry.unregister("test");
+        Assert.assertNull(registry.get("test"));
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(MetricsRegistry.objectName("test")));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ProgressingFutureTest
+{
+
+    @Test
+    public void testComplete() throws Exception
+    {
+        TestFuture future = new TestFuture();
+        List<Double> updates = new ArrayList<>();
+        future.setOnProgress(updates::add);
+        CompletableFuture<Integer> length = future.thenApply(String::length)
+                .toCompletableFuture();
+        Assert.assertEquals(ProgressingFuture.State.RUNNING, future.getState());
+        Assert.assertFalse(length.isDone());
+        future.complete("result");
+        Assert.assertEquals(ProgressingFuture.State.COMPLETED,
+                future.getState());
+        Assert.assertEquals("result", future.get());
+        Assert.assertEquals(6, length.get().intValue());
+        Assert.assertNull(future.getError());
+        Assert.assertEquals(1.0, updates.get(updates.size() - 1), 0.0);
+    }
+
+    @Test
+    public void testFail()
+    {
+        TestFuture future = new TestFuture();
+        IOException error = new IOException();
+        future.fail(error);
+        Assert.assertEquals(ProgressingFuture.State.FAILED, future.getState());
+        Assert.assertSame(error, future.getError());
+        Assert.assertEquals("failed", future.exceptionally(ex -> "failed")
+                .toCompletableFuture().join());
+        Assert.assertFalse(future.complete("late"));
+    }
+
+    @Test
+    public void testCancel()
+    {
+        TestFuture future = new TestFuture();
+        Assert.assertTrue(future.cancel(false));
+        Assert.assertTrue(future.isCancelled());
+        Assert.assertTrue(future.isDone());
+        Assert.assertEquals(ProgressingFuture.State.CANCELLED,
+                future.getState());
+        Assert.assertTrue(future.getError() instanceof CancellationException);
+        Assert.assertFalse(future.complete("ignored"));
+    }
+
+    @Test
+    public void testToCompletableFutureIsView()
+    {
+        TestFuture future = new TestFuture();
+        future.toCompletableFuture().complete("outside");
+        Assert.assertEquals(ProgressingFuture.State.RUNNING, future.getState());
+    }
+
+    private static final class TestFuture extends ProgressingFuture<String>
+    {
+
+        @Override
+        public double getProgress()
+        {
+            return getState() == State.COMPLETED ? 1 : 0;
+        }
+
+        @Override
+        protected boolean complete(String result)
+        {
+            return super.complete(result);
+        }
+
+        @Override
+        protected boolean fail(Throwable error)
+        {
+            return super.fail(error);
+        }
+    }
+}
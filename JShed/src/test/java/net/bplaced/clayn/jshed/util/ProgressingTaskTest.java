@@ -0,0 +1,155 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class ProgressingTaskTest
+{
+
+    @Test
+    public void testFireWithoutCoalescing()
+    {
+        List<Double> values = new ArrayList<>();
+        ProgressingTask task = task();
+        task.setOnProgressChanged(values::add);
+        task.fireProgressChanged(0.1);
+        task.fireProgressChanged(0.1);
+        task.fireProgressChanged(0.2);
+        Assert.assertEquals(2, values.size());
+    }
+
+    @Test
+    public void testCoalesceByDelta()
+    {
+        List<Double> values = new ArrayList<>();
+        ProgressingTask task = task();
+        task.setOnProgress(values::add);
+        task.setProgressCoalescing(0.1, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i <= 1000; i++)
+        {
+            task.fireProgressChanged(i / 1000.0);
+        }
+        Assert.assertEquals(11, values.size());
+        Assert.assertEquals(0.0, values.get(0), 0.0);
+        Assert.assertEquals(1.0, values.get(values.size() - 1), 0.0);
+    }
+
+    @Test
+    public void testCoalesceByInterval()
+    {
+        List<Double> values = new ArrayList<>();
+        ProgressingTask task = task();
+        task.setOnProgress(values::add);
+        task.setProgressCoalescing(0, 1, TimeUnit.HOURS);
+        task.fireProgressChanged(0.1);
+        task.fireProgressChanged(0.5);
+        task.fireProgressChanged(0.9);
+        task.fireProgressChanged(1.0);
+        Assert.assertEquals(2, values.size());
+        Assert.assertEquals(1.0, values.get(1), 0.0);
+    }
+
+    @Test
+    public void testThroughput() throws InterruptedException
+    {
+        ProgressingTask task = new ProgressingTask()
+        {
+            @Override
+            public double getProgress()
+            {
+                return getWorkDone() / 1000.0;
+            }
+        };
+        Assert.assertEquals(0, task.getElapsedTime(TimeUnit.NANOSECONDS));
+        Assert.assertEquals(-1,
+                task.getEstimatedTimeRemaining(TimeUnit.MILLISECONDS));
+        task.reportWork(100);
+        for (int i = 0; i < 3; i++)
+        {
+            Thread.sleep(ProgressingTask.THROUGHPUT_SAMPLE_MILLIS + 10);
+            task.reportWork(100);
+        }
+        Assert.assertEquals(400, task.getWorkDone());
+        Assert.assertTrue(task.getElapsedTime(TimeUnit.MILLISECONDS) >= 300);
+        double average = task.getAverageThroughput();
+        Assert.assertTrue(average > 0 && average <= 400 / 0.3);
+        Assert.assertTrue(task.getCurrentThroughput() > 0);
+        long eta = task.getEstimatedTimeRemaining(TimeUnit.MILLISECONDS);
+        Assert.assertTrue(eta > 0);
+        task.reportWork(600);
+        Assert.assertEquals(0,
+                task.getEstimatedTimeRemaining(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testEstimateFromTotalWork() throws InterruptedException
+    {
+        ProgressingTask task = new ProgressingTask()
+        {
+            @Override
+            public double getProgress()
+            {
+                return 0;
+            }
+
+            @Override
+            protected long getTotalWork()
+            {
+                return 1000;
+            }
+        };
+        task.reportWork(100);
+        for (int i = 0; i < 3; i++)
+        {
+            Thread.sleep(ProgressingTask.THROUGHPUT_SAMPLE_MILLIS + 10);
+            task.reportWork(100);
+        }
+        long eta = task.getEstimatedTimeRemaining(TimeUnit.MILLISECONDS);
+        Assert.assertTrue(eta > 0);
+        task.reportWork(600);
+        Assert.assertEquals(0,
+                task.getEstimatedTimeRemaining(TimeUnit.MILLISECONDS));
+    }
+
+    private static ProgressingTask task()
+    {
+        return new ProgressingTask()
+        {
+            @Override
+            public double getProgress()
+            {
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the Java 21 version of {@link VirtualThreads}. Only compiled and
+ * run by the java21 profile.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class VirtualThreadsTest
+{
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty(JShed.VIRTUAL_THREADS_PROPERTY);
+        JShed.shutdown();
+    }
+
+    @Test
+    public void testAvailable()
+    {
+        Assert.assertTrue(JShed.isVirtualThreadsSupported());
+    }
+
+    @Test(timeout = 10000)
+    public void testUseVirtualThreads() throws Exception
+    {
+        Assert.assertTrue(JShed.useVirtualThreads());
+        Thread thread = JShed.getIOExecutor().submit(Thread::currentThread)
+                .get();
+        Assert.assertTrue(thread.isVirtual());
+        Assert.assertTrue(thread.getName().startsWith("jshed-io-"));
+    }
+
+    @Test(timeout = 10000)
+    public void testVirtualThreadsProperty() throws Exception
+    {
+        JShed.shutdown();
+        System.setProperty(JShed.VIRTUAL_THREADS_PROPERTY, "true");
+        Assert.assertTrue(JShed.getIOExecutor().submit(
+                () -> Thread.currentThread().isVirtual()).get());
+    }
+}
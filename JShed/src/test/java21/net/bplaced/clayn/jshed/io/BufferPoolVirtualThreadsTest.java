@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Clayn <clayn_osmato@gmx.de>.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package net.bplaced.clayn.jshed.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BufferPool} on virtual threads. Only compiled and run by
+ * the java21 profile.
+ *
+ * @author Clayn <clayn_osmato@gmx.de>
+ */
+public class BufferPoolVirtualThreadsTest
+{
+
+    @Test(timeout = 10000)
+    public void testReuseHeapAcrossVirtualThreads() throws Exception
+    {
+        BufferPool pool = new BufferPool(4);
+        AtomicReference<byte[]> first = new AtomicReference<>();
+        AtomicReference<byte[]> second = new AtomicReference<>();
+        Thread.ofVirtual().start(() ->
+        {
+            first.set(pool.acquire(5000));
+            pool.release(first.get());
+        }).join();
+        Thread.ofVirtual().start(() -> second.set(pool.acquire(5000))).join();
+        Assert.assertSame(first.get(), second.get());
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+    }
+
+    @Test(timeout = 10000)
+    public void testReuseDirectAcrossVirtualThreads() throws Exception
+    {
+        BufferPool pool = new BufferPool(4);
+        AtomicReference<ByteBuffer> first = new AtomicReference<>();
+        Thread.ofVirtual().start(() ->
+        {
+            first.set(pool.acquireDirect(5000));
+            pool.releaseDirect(first.get());
+        }).join();
+        Assert.assertSame(first.get(), pool.acquireDirect(5000));
+        Assert.assertEquals(1, pool.getHits());
+        Assert.assertEquals(1, pool.getMisses());
+    }
+}
@@ -23,6 +23,8 @@
  */
 package net.bplaced.clayn.jshed.fx.util;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyBooleanProperty;
@@ -34,20 +36,42 @@ import net.bplaced.clayn.jshed.util.ProgressingTask;
 /**
  * An implementation of the {@link ProgressingTask} that provides bindings to
  * the progress and done values of the underling task. The changes for those
- * bindings are done on the FXApplication Thread.
+ * bindings are done on the FXApplication Thread. Updates are coalesced so
+ * that at most one update is pending on the FXApplication Thread at any time.
  *
  * @author Clayn <clayn_osmato@gmx.de>
  */
 public class FXProgressingTask extends ProgressingTask
 {
 
+    /**
+     * The default minimum change of the progress before the bindings get
+     * updated.
+     */
+    public static final double DEFAULT_PROGRESS_DELTA = 0.001;
+    /**
+     * The default minimum time in milliseconds between two updates of the
+     * bindings. This is roughly one frame.
+     */
+    public static final long DEFAULT_PROGRESS_INTERVAL = 16;
+
     private volatile Consumer<Double> volatileConsumer = null;
+    private volatile double latestProgress = -1;
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
     private final Consumer<Double> defaultConsumer = new Consumer<Double>()
     {
         @Override
         public void accept(Double t)
         {
-            Platform.runLater(() -> progress.set(t));
+            latestProgress = t;
+            if (updatePending.compareAndSet(false, true))
+            {
+                Platform.runLater(() ->
+                {
+                    updatePending.set(false);
+                    progress.set(latestProgress);
+                });
+            }
             if (volatileConsumer != null)
             {
                 volatileConsumer.accept(t);
@@ -61,6 +85,8 @@ public class FXProgressingTask extends ProgressingTask
     {
         done.bind(progress.greaterThanOrEqualTo(1.0));
         super.setOnProgressChanged(defaultConsumer);
+        setProgressCoalescing(DEFAULT_PROGRESS_DELTA, DEFAULT_PROGRESS_INTERVAL,
+                TimeUnit.MILLISECONDS);
     }
 
     public final ReadOnlyDoubleProperty progressProperty()